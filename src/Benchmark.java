@@ -0,0 +1,408 @@
+import com.sun.management.ThreadMXBean;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Micro-benchmarks for the game engine. Each benchmark is warmed up, then timed over
+ * several measurement rounds; the report gives the best round in nanoseconds per
+ * operation and the bytes allocated per operation by the benchmark thread (the
+ * equivalent of JMH's -prof gc).
+ * 
+ * Usage: java Benchmark [name-filter]
+ * The checked-in baseline is runBench.output.txt.
+ */
+public class Benchmark {
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int MEASURED_ROUNDS = 5;
+	// Target duration of one round
+	private static final long ROUND_NANOS = 200000000L;
+	
+	private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+	
+	// Results are folded into sink so the JIT cannot drop the benchmarked work
+	static volatile long sink;
+	
+	// A benchmarked operation. run(n) performs the operation n times.
+	interface Operation {
+		long run(int n);
+	}
+	
+	private final String filter;
+	
+	Benchmark(String filter) {
+		this.filter = filter;
+	}
+	
+	public static void main(String[] args) {
+		Config.setBuggyRoom(false);
+		Config.setBuggyPlayer(false);
+		Benchmark bench = new Benchmark(args.length > 0 ? args[0] : "");
+		System.out.println(String.format("%-40s %12s %12s", "Benchmark", "ns/op", "bytes/op"));
+		bench.runAll();
+	}
+	
+	void runAll() {
+		CoffeeMakerQuestImpl game = newGame();
+		// Rotate through sessions in different rooms with different inventories, so the JIT
+		// cannot hoist the command out of the loop as it could with one unchanging session
+		CoffeeMakerQuestImpl[] rotation = new CoffeeMakerQuestImpl[8];
+		for(int i = 0; i < rotation.length; i++) {
+			rotation[i] = new CoffeeMakerQuestImpl(game.world);
+			Player player = new Player();
+			for(Item item : Item.values()) {
+				if((i & Player.mask(item)) != 0) {
+					player.addItem(item);
+				}
+			}
+			rotation[i].setPlayer(player);
+			rotation[i].setCurrentRoom(game.world.get(i % game.world.size()));
+		}
+		for(String cmd : new String[] {"L", "I", "D", "H", "x"}) {
+			measure("processCommand " + cmd, n -> {
+				long h = 0;
+				for(int i = 0; i < n; i++) {
+					h += rotation[i & 7].processCommand(cmd).length();
+				}
+				return h;
+			});
+		}
+		StringBuilder appended = new StringBuilder(1024);
+		ByteBuffer encoded = ByteBuffer.allocate(CoffeeMakerQuestImpl.MAX_RESPONSE_BYTES);
+		for(String cmd : new String[] {"L", "D", "H"}) {
+			measure("processCommand " + cmd + " to Appendable", n -> {
+				long h = 0;
+				for(int i = 0; i < n; i++) {
+					appended.setLength(0);
+					try {
+						game.processCommand(cmd, appended);
+					} catch(IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					h += appended.length();
+				}
+				return h;
+			});
+			measure("processCommand " + cmd + " to ByteBuffer", n -> {
+				long h = 0;
+				for(int i = 0; i < n; i++) {
+					encoded.clear();
+					game.processCommand(cmd, encoded);
+					h += encoded.position();
+				}
+				return h;
+			});
+		}
+		CoffeeMakerQuestImpl measured = newGame();
+		measured.setMetrics(new QuestMetrics());
+		for(String cmd : new String[] {"I", "x"}) {
+			measure("processCommand " + cmd + ", with metrics", n -> {
+				long h = 0;
+				for(int i = 0; i < n; i++) {
+					h += measured.processCommand(cmd).length();
+				}
+				return h;
+			});
+		}
+		measure("processCommand N+S (per pair)", n -> {
+			long h = 0;
+			for(int i = 0; i < n; i++) {
+				h += game.processCommand("N").length() + game.processCommand("S").length();
+			}
+			return h;
+		});
+		measure("drink", n -> {
+			long h = 0;
+			for(int i = 0; i < n; i++) {
+				h += game.drink().length();
+			}
+			return h;
+		});
+		// Rotate through several rooms and players so the JIT cannot hoist the call out of the loop
+		Room[] gameRooms = new Room[game.world.size()];
+		for(int i = 0; i < gameRooms.length; i++) {
+			gameRooms[i] = game.world.get(i);
+		}
+		measure("Room.getDescription", n -> {
+			long h = 0;
+			for(int i = 0; i < n; i++) {
+				h += gameRooms[i % gameRooms.length].getDescription().length();
+			}
+			return h;
+		});
+		Player[] players = new Player[8];
+		for(int i = 0; i < players.length; i++) {
+			players[i] = new Player();
+			for(Item item : Item.values()) {
+				if((i & Player.mask(item)) != 0) {
+					players[i].addItem(item);
+				}
+			}
+		}
+		measure("Player.getInventoryString", n -> {
+			long h = 0;
+			for(int i = 0; i < n; i++) {
+				h += players[i & 7].getInventoryString().length();
+			}
+			return h;
+		});
+		
+		for(int size = 1000; size <= 1000000; size *= 10) {
+			int rooms = size;
+			measureOnce("addRoomAtNorth, world of " + rooms + " (per room)", rooms, () -> {
+				CoffeeMakerQuestImpl big = new CoffeeMakerQuestImpl();
+				big.addFirstRoom(new Room("Furnishing 0", "Adjective 0", Item.NONE));
+				for(int i = 1; i < rooms; i++) {
+					big.addRoomAtNorth(new Room("Furnishing " + i, "Adjective " + i, Item.NONE), "North", "South");
+				}
+				return big.world.size();
+			});
+		}
+		
+		CoffeeMakerQuestImpl big = new CoffeeMakerQuestImpl();
+		Room[] bigRooms = new Room[1000000];
+		for(int i = 0; i < bigRooms.length; i++) {
+			bigRooms[i] = new Room("Furnishing " + i, "Adjective " + i, Item.NONE);
+		}
+		big.addFirstRoom(bigRooms[0]);
+		big.addRoomsAtNorth(Arrays.asList(bigRooms).subList(1, bigRooms.length),
+				Collections.nCopies(bigRooms.length - 1, "North"), Collections.nCopies(bigRooms.length - 1, "South"));
+		measure("setCurrentRoom, world of 1000000", n -> {
+			long h = 0;
+			for(int i = 0; i < n; i++) {
+				h += big.setCurrentRoom(bigRooms[(int) ((i * 7919L) % bigRooms.length)]) ? 1 : 0;
+			}
+			return h;
+		});
+		
+		// A 1000 x 1000 grid with doors both ways between neighbours
+		World grid = new World(new RoomTable());
+		int side = 1000;
+		for(int i = 0; i < side * side; i++) {
+			grid.addRoom(new Room("Furnishing " + i, "Adjective " + i, Item.NONE));
+		}
+		for(int i = 0; i < side * side; i++) {
+			if(i % side < side - 1) {
+				grid.connect(i, Direction.EAST, i + 1, "East");
+				grid.connect(i + 1, Direction.WEST, i, "West");
+			}
+			if(i + side < side * side) {
+				grid.connect(i, Direction.NORTH, i + side, "North");
+				grid.connect(i + side, Direction.SOUTH, i, "South");
+			}
+		}
+		grid.freeze();
+		CoffeeMakerQuestImpl walker = new CoffeeMakerQuestImpl(grid);
+		walker.setPlayer(new Player());
+		walker.setCurrentRoom(grid.get(side * side / 2));
+		String[] loop = {"E", "N", "W", "S"};
+		measure("processCommand E/N/W/S, grid of 1000000", n -> {
+			long h = 0;
+			for(int i = 0; i < n; i++) {
+				h += walker.processCommand(loop[i & 3]).length();
+			}
+			return h;
+		});
+		
+		CoffeeMakerQuestImpl explorer = new CoffeeMakerQuestImpl(new World(new ProceduralRoomStore(1, Integer.MAX_VALUE, 64)));
+		explorer.setPlayer(new Player());
+		explorer.setCurrentRoom(explorer.world.get(0));
+		measure("N + getDescription, procedural corridor", n -> {
+			long h = 0;
+			for(int i = 0; i < n; i++) {
+				h += explorer.processCommand("N").length() + explorer.getCurrentRoom().getDescription().length();
+			}
+			return h;
+		});
+		
+		World world = Game.createWorld();
+		List<CoffeeMakerQuestImpl> sessions = new ArrayList<CoffeeMakerQuestImpl>();
+		for(int i = 0; i < 1000000; i++) {
+			CoffeeMakerQuestImpl session = new CoffeeMakerQuestImpl(world);
+			session.setPlayer(new Player());
+			session.setCurrentRoom(world.get(i % world.size()));
+			session.look();
+			sessions.add(session);
+		}
+		try {
+			File file = File.createTempFile("sessions", ".bin");
+			file.deleteOnExit();
+			measureOnce("SessionSnapshots.save, 1000000 (per session)", sessions.size(), () -> {
+				try {
+					SessionSnapshots.save(file, world, sessions);
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return file.length();
+			});
+			measureOnce("SessionSnapshots.load, 1000000 (per session)", sessions.size(), () -> {
+				try {
+					return SessionSnapshots.load(file, world).size();
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			
+			File journalFile = File.createTempFile("journal", ".bin");
+			journalFile.deleteOnExit();
+			String[] commands = {"N", "L", "I", "S", "L", "H"};
+			LongSupplier journaled = () -> {
+				long h = 0;
+				try(CommandJournal journal = new CommandJournal(journalFile, true, 5)) {
+					for(int i = 0; i < 100; i++) {
+						sessions.get(i).setJournal(journal, i);
+					}
+					for(int i = 0; i < 1000000; i++) {
+						h += sessions.get(i % 100).processCommand(commands[i % commands.length]).length();
+					}
+					for(int i = 0; i < 100; i++) {
+						sessions.get(i).setJournal(null, i);
+					}
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return h;
+			};
+			measureOnce("processCommand, journaled (per command)", 1000000, journaled);
+			if(journalFile.length() == 0) {
+				sink += journaled.getAsLong();
+			}
+			measureOnce("JournalReplayer.replay (per record)", 1000100, () -> {
+				try {
+					return new JournalReplayer(world).replay(journalFile);
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			
+			File worldFile = File.createTempFile("world", ".bin");
+			worldFile.deleteOnExit();
+			measureOnce("MappedRoomStore open, 10000000 rooms", 1, () -> {
+				try {
+					// The file is written by the first warm-up round
+					if(worldFile.length() == 0) {
+						MappedRoomStore.write(worldFile, new World(new ProceduralRoomStore(1, 10000000, 1024)));
+					}
+					World opened = new World(new MappedRoomStore(worldFile));
+					return opened.get(opened.size() - 1).getDescription().length();
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			
+			// Time to first command for a 1000000-room world, built from its text definition
+			// as before WorldCompiler and loaded from its compiled image
+			File definition = File.createTempFile("world", ".txt");
+			File image = File.createTempFile("world", ".img");
+			definition.deleteOnExit();
+			image.deleteOnExit();
+			WorldCompiler.decompile(new World(new ProceduralRoomStore(1, 1000000, 1024)), definition);
+			WorldCompiler.compile(definition, image);
+			measureOnce("first command, 1000000 rooms, text", 1, () -> {
+				try {
+					List<String> lines = Files.readAllLines(definition.toPath());
+					ArrayList<Room> rooms = new ArrayList<Room>();
+					ArrayList<String> northDoors = new ArrayList<String>();
+					ArrayList<String> southDoors = new ArrayList<String>();
+					for(String line : lines) {
+						if(line.startsWith("#")) {
+							continue;
+						}
+						String[] fields = line.split(" \\| ");
+						rooms.add(new Room(fields[1], fields[0], Item.valueOf(fields[2])));
+						southDoors.add(fields[3]);
+						northDoors.add(fields[4]);
+					}
+					CoffeeMakerQuestImpl started = new CoffeeMakerQuestImpl();
+					started.addFirstRoom(rooms.get(0));
+					started.addRoomsAtNorth(rooms.subList(1, rooms.size()), northDoors.subList(0, rooms.size() - 1),
+							southDoors.subList(1, rooms.size()));
+					started.world.freeze();
+					started.setPlayer(new Player());
+					started.setCurrentRoom(rooms.get(0));
+					return started.processCommand("L").length();
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			measureOnce("first command, 1000000 rooms, image", 1, () -> {
+				try {
+					CoffeeMakerQuestImpl started = new CoffeeMakerQuestImpl(WorldCompiler.load(image));
+					started.setPlayer(new Player());
+					started.setCurrentRoom(started.world.get(0));
+					return started.processCommand("L").length();
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		
+		PlaythroughSimulator simulator = new PlaythroughSimulator(world);
+		measureOnce("PlaythroughSimulator random (per game)", 1000000,
+				() -> simulator.run(PlaythroughSimulator.RANDOM, 1000000, 1000, 1).commands);
+		measureOnce("PlaythroughSimulator sweep (per game)", 1000000,
+				() -> simulator.run(PlaythroughSimulator.SWEEP, 1000000, 1000, 1).commands);
+	}
+	
+	// The world of Game with a player standing in the first room
+	static CoffeeMakerQuestImpl newGame() {
+		CoffeeMakerQuestImpl game = new CoffeeMakerQuestImpl(Game.createWorld());
+		game.setPlayer(new Player());
+		game.setCurrentRoom(game.world.get(0));
+		return game;
+	}
+	
+	/**
+	 * Benchmark a fast operation: warm up while calibrating the batch size so that a
+	 * round lasts about ROUND_NANOS, then report the best of the measured rounds.
+	 */
+	void measure(String name, Operation op) {
+		if(!name.contains(filter)) {
+			return;
+		}
+		int n = 1000;
+		for(int i = 0; i < WARMUP_ROUNDS; i++) {
+			long start = System.nanoTime();
+			sink += op.run(n);
+			long elapsed = Math.max(1, System.nanoTime() - start);
+			n = (int) Math.max(1, Math.min(1 << 30, n * (double) ROUND_NANOS / elapsed));
+		}
+		int batch = n;
+		report(name, batch, () -> op.run(batch));
+	}
+	
+	/**
+	 * Benchmark an operation that does ops units of work in one go, such as building a
+	 * world; the result is per unit.
+	 */
+	void measureOnce(String name, int ops, LongSupplier op) {
+		if(!name.contains(filter)) {
+			return;
+		}
+		for(int i = 0; i < 2; i++) {
+			sink += op.getAsLong();
+		}
+		report(name, ops, op);
+	}
+	
+	private void report(String name, int ops, LongSupplier round) {
+		long bestNanos = Long.MAX_VALUE;
+		long bestBytes = Long.MAX_VALUE;
+		long thread = Thread.currentThread().getId();
+		for(int i = 0; i < MEASURED_ROUNDS; i++) {
+			long bytes = THREADS.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			sink += round.getAsLong();
+			long nanos = System.nanoTime() - start;
+			bytes = THREADS.getThreadAllocatedBytes(thread) - bytes;
+			bestNanos = Math.min(bestNanos, nanos);
+			bestBytes = Math.min(bestBytes, bytes);
+		}
+		System.out.println(String.format("%-40s %12.2f %12.1f", name, (double) bestNanos / ops, (double) bestBytes / ops));
+	}
+}
@@ -1,3 +1,6 @@
+import java.io.IOException;
+import java.util.List;
+
 public interface CoffeeMakerQuest {
 	public static CoffeeMakerQuest createInstance() {
 		if(Config.getBuggyCoffeeMakerQuest()) {
@@ -17,4 +20,54 @@ public interface CoffeeMakerQuest {
 	public boolean setCurrentRoom(Room room);
 	public String getInstructionsString();
 	public String processCommand(String cmd);
+	
+	// Append the response to cmd to out; implementations may avoid building the response string
+	public default void processCommand(CharSequence cmd, Appendable out) throws IOException {
+		out.append(processCommand(cmd.toString()));
+	}
+	
+	// Same as processCommand(String), for callers holding a command in a reused buffer
+	public default String processCommand(CharSequence cmd) {
+		return processCommand(cmd.toString());
+	}
+	
+	// Run a script such as "N*40 L S*12 L D" and append each response to out; see
+	// CoffeeMakerQuestImpl.processCommands. This version runs the commands one by one.
+	public default void processCommands(CharSequence script, Appendable out) throws IOException {
+		for(String token : script.toString().split("\\s+")) {
+			if(isGameOver()) {
+				return;
+			}
+			if(token.isEmpty()) {
+				continue;
+			}
+			String cmd = token;
+			int count = 1;
+			if(token.matches(".+\\*[0-9]+")) {
+				int star = token.lastIndexOf('*');
+				try {
+					count = Integer.parseInt(token.substring(star + 1));
+					cmd = token.substring(0, star);
+				} catch(NumberFormatException e) {
+					// too large a count: a single command of its own
+				}
+			}
+			for(int i = 0; i < count && !isGameOver(); i++) {
+				out.append(processCommand(cmd));
+			}
+		}
+	}
+	
+	// Returns how the drink went, or null before the player drinks; implementations that do
+	// not keep track of it always return null
+	public default DrinkOutcome getDrinkOutcome() {
+		return null;
+	}
+	
+	// Attach a batch of rooms at north, all or nothing; see CoffeeMakerQuestImpl.addRoomsAtNorth.
+	// That takes checking every room against the whole world before adding any, which only
+	// an implementation can do, so this version supports no batches at all.
+	public default boolean addRoomsAtNorth(List<Room> rooms, List<String> northDoors, List<String> southDoors) {
+		throw new UnsupportedOperationException("This implementation cannot add rooms in a batch");
+	}
 }
\ No newline at end of file
@@ -1,15 +1,95 @@
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class CoffeeMakerQuestImpl implements CoffeeMakerQuest {
 
 	Player player;
 	
-	ArrayList<Room> rooms = new ArrayList<Room>();
+	// The rooms, possibly shared with other games; everything below is this session's state
+	World world;
 	private int currRoom = 0;
 	private boolean initializedCurrRoom = false;
-	private boolean drank = false;	
+	private boolean drank = false;
+	private DrinkOutcome drinkOutcome = null;
 	
-	CoffeeMakerQuestImpl() { }
+	// Where processCommand calls are recorded, if anywhere, and as which session
+	private CommandJournal journal = null;
+	private long sessionId;
+	// Where commands are counted and timed, if anywhere; see QuestMetrics.SAMPLE_EVERY
+	private QuestMetrics metrics = null;
+	private int unsampled = 0;
+	// Commands not yet counted in metrics, by Command ordinal
+	private final int[] unpublished = new int[COMMANDS.length];
+	private static final Command[] COMMANDS = Command.values();
+	
+	// Layout of snapshot(): currRoom in the low 32 bits, then these fields
+	static final int SNAPSHOT_INVENTORY_SHIFT = 32;
+	static final int SNAPSHOT_DRUNK_SHIFT = 35;
+	static final long SNAPSHOT_INITIALIZED = 1L << 38;
+	static final long SNAPSHOT_DRANK = 1L << 39;
+	
+	// Every response is made of these constants, the inventory strings of Player and the
+	// messages of DrinkOutcome, so rendering a response never has to build a string
+	private static final String NO_DOOR = "A door in that direction does not exist.\n";
+	private static final String WHAT = "What?\n";
+	private static final String NOTHING_FOUND = "You don't see anything out of the ordinary.\n";
+	private static final String COFFEE_FOUND = "There might be something here...\nYou found some caffeinated coffee!\n";
+	private static final String CREAM_FOUND = "There might be something here...\nYou found some creamy cream!\n";
+	private static final String SUGAR_FOUND = "There might be something here...\nYou found some sweet sugar!\n";
+	static final String CHAIN_INSTRUCTIONS = " INSTRUCTIONS (N,S,L,I,D,H) > ";
+	static final String GRAPH_INSTRUCTIONS = " INSTRUCTIONS (N,S,E,W,L,I,D,H) > ";
+	private static final String CHAIN_HELP = help(false);
+	private static final String GRAPH_HELP = help(true);
+	// UTF-8 encoding of each of those strings, by identity
+	private static final IdentityHashMap<String, byte[]> ENCODED = new IdentityHashMap<String, byte[]>();
+	// The longest response, in bytes
+	static final int MAX_RESPONSE_BYTES;
+	static {
+		for(String s : new String[] {"", NO_DOOR, WHAT, NOTHING_FOUND, COFFEE_FOUND, CREAM_FOUND, SUGAR_FOUND,
+				CHAIN_INSTRUCTIONS, GRAPH_INSTRUCTIONS, CHAIN_HELP, GRAPH_HELP}) {
+			ENCODED.put(s, s.getBytes(StandardCharsets.UTF_8));
+		}
+		int maxDrink = 0;
+		for(int mask = 0; mask < 8; mask++) {
+			byte[] inventory = Player.inventoryString(mask).getBytes(StandardCharsets.UTF_8);
+			byte[] message = DrinkOutcome.forInventory(mask).getMessage().getBytes(StandardCharsets.UTF_8);
+			ENCODED.put(Player.inventoryString(mask), inventory);
+			ENCODED.put(DrinkOutcome.forInventory(mask).getMessage(), message);
+			maxDrink = Math.max(maxDrink, inventory.length + message.length);
+		}
+		int max = maxDrink;
+		for(byte[] bytes : ENCODED.values()) {
+			max = Math.max(max, bytes.length);
+		}
+		MAX_RESPONSE_BYTES = max;
+	}
+	
+	CoffeeMakerQuestImpl() {
+		this(new World());
+	}
+	
+	/**
+	 * Create a game whose rooms are kept in the given store, for example a RoomTable
+	 * for very large worlds.
+	 * 
+	 * @param rooms an empty room store
+	 */
+	CoffeeMakerQuestImpl(RoomStore rooms) {
+		this(new World(rooms));
+	}
+	
+	/**
+	 * Create a game session played in the given world. Many sessions can share one
+	 * frozen world; each has its own player, location and game-over state.
+	 * 
+	 * @param world the world to play in
+	 */
+	CoffeeMakerQuestImpl(World world) {
+		this.world = world;
+	}
 
 	/**
 	 * Whether the game is over. The game ends when the player drinks the coffee.
@@ -32,6 +112,45 @@ public class CoffeeMakerQuestImpl implements CoffeeMakerQuest {
 		player = p;
 	}
 	
+	/**
+	 * Record every command processed from now on, as well as setCurrentRoom and restore
+	 * calls, in journal under the given session id. The journal starts with the current
+	 * state of the session, so it can be replayed on its own.
+	 * 
+	 * @param journal   the journal, or null to stop recording
+	 * @param sessionId identifies this session in the journal
+	 */
+	void setJournal(CommandJournal journal, long sessionId) {
+		this.journal = journal;
+		this.sessionId = sessionId;
+		if(journal != null) {
+			journal.appendRestore(sessionId, snapshot());
+		}
+	}
+	
+	/**
+	 * Count and time the commands processed from now on, and the rooms added, in metrics.
+	 * 
+	 * @param metrics the metrics, or null to stop recording
+	 */
+	void setMetrics(QuestMetrics metrics) {
+		publishMetrics();
+		this.metrics = metrics;
+	}
+	
+	// Add the commands counted since the last call to metrics
+	private void publishMetrics() {
+		if(metrics == null) {
+			return;
+		}
+		for(int i = 0; i < unpublished.length; i++) {
+			if(unpublished[i] != 0) {
+				metrics.count(COMMANDS[i], unpublished[i]);
+				unpublished[i] = 0;
+			}
+		}
+	}
+	
 	/**
 	 * Add the first room in the game. If room is null or if this not the first room
 	 * (there are pre-exiting rooms), the room is not added and false is returned.
@@ -40,16 +159,15 @@ public class CoffeeMakerQuestImpl implements CoffeeMakerQuest {
 	 * @return true if successful, false otherwise
 	 */
 	public boolean addFirstRoom(Room room) {
-		if(room == null) {
+		long start = metrics != null ? System.nanoTime() : 0;
+		if(!world.addFirstRoom(room)) {
 			return false;
 		}
-		
-		if(rooms.size() == 0) {
-			rooms.add(room);
-			currRoom = 0;
-			return true;
+		if(metrics != null) {
+			metrics.recordRoomsAdded(1, System.nanoTime() - start);
 		}
-		return false;
+		currRoom = 0;
+		return true;
 	}
 
 	/**
@@ -69,23 +187,41 @@ public class CoffeeMakerQuestImpl implements CoffeeMakerQuest {
 	 * @return true if successful, false otherwise
 	 */
 	public boolean addRoomAtNorth(Room room, String northDoor, String southDoor) {
-		if(room == null || northDoor == null || southDoor == null) {
-			return false;
+		if(metrics == null) {
+			return world.addRoomAtNorth(room, northDoor, southDoor);
 		}
-		
-		if(rooms.size() == 0) {
-			return false;
+		long start = System.nanoTime();
+		boolean added = world.addRoomAtNorth(room, northDoor, southDoor);
+		if(added) {
+			metrics.recordRoomsAdded(1, System.nanoTime() - start);
 		}
-		
-		for(Room r : rooms) {
-			if(r.getAdjective().equalsIgnoreCase(room.getAdjective()) || r.getFurnishing().equalsIgnoreCase(room.getFurnishing())) {
-				return false;
-			}
+		return added;
+	}
+
+	/**
+	 * Attach a batch of rooms to the northern-most room, in order. This is equivalent to
+	 * calling addRoomAtNorth(newRooms.get(i), northDoors.get(i), southDoors.get(i)) for
+	 * every i, except that the whole batch is validated before anything is changed:
+	 * either all the rooms are added or none of them are.
+	 * The batch is rejected if any of the lists or their elements are null, if the lists
+	 * differ in length, if there are no pre-existing rooms, or if any room is not unique
+	 * among the pre-existing rooms and the other rooms of the batch.
+	 * 
+	 * @param newRooms   the rooms to add, from south to north
+	 * @param northDoors northDoors.get(i) labels the north door of the room that is northern-most before newRooms.get(i) is added
+	 * @param southDoors southDoors.get(i) labels the south door of newRooms.get(i)
+	 * @return true if successful, false otherwise
+	 */
+	public boolean addRoomsAtNorth(List<Room> newRooms, List<String> northDoors, List<String> southDoors) {
+		if(metrics == null) {
+			return world.addRoomsAtNorth(newRooms, northDoors, southDoors);
 		}
-		rooms.get(rooms.size()-1).setNorthDoor(northDoor);
-		room.setSouthDoor(southDoor);
-		rooms.add(room);
-		return true;
+		long start = System.nanoTime();
+		boolean added = world.addRoomsAtNorth(newRooms, northDoors, southDoors);
+		if(added) {
+			metrics.recordRoomsAdded(newRooms.size(), System.nanoTime() - start);
+		}
+		return added;
 	}
 
 	/**
@@ -98,7 +234,7 @@ public class CoffeeMakerQuestImpl implements CoffeeMakerQuest {
 		if(!initializedCurrRoom) {
 			return null;
 		}
-		return rooms.get(currRoom);
+		return world.get(currRoom);
 	}
 	
 	/**
@@ -113,24 +249,47 @@ public class CoffeeMakerQuestImpl implements CoffeeMakerQuest {
 			return false;
 		}
 		initializedCurrRoom = true;
-		for(int i = 0; i < rooms.size(); i++) {
-			Room temp = rooms.get(i);
-			if(temp.equals(room)) {
-				currRoom = i;
-				return true;
-			}
+		int index = indexOf(room);
+		if(journal != null) {
+			journal.appendSetRoom(sessionId, index);
 		}
-		return false;
+		if(index < 0) {
+			return false;
+		}
+		currRoom = index;
+		return true;
+	}
+
+	/**
+	 * Returns the position of room in the game, counting from the first room (0)
+	 * northwards.
+	 * 
+	 * @param room the room to look up
+	 * @return index of the room, or -1 if the room does not exist in the game
+	 */
+	int indexOf(Room room) {
+		return world.indexOf(room);
 	}
 	
 	/**
 	 * Get the instructions string command prompt. It returns the following prompt:
-	 * " INSTRUCTIONS (N,S,L,I,D,H) > ".
+	 * " INSTRUCTIONS (N,S,L,I,D,H) > ", or " INSTRUCTIONS (N,S,E,W,L,I,D,H) > " in a
+	 * graph world (see World.connect).
 	 * 
 	 * @return command prompt string
 	 */
 	public String getInstructionsString() {
-		return " INSTRUCTIONS (N,S,L,I,D,H) > ";
+		return world.isChain() ? CHAIN_INSTRUCTIONS : GRAPH_INSTRUCTIONS;
+	}
+	
+	/**
+	 * Returns getInstructionsString() encoded as UTF-8, for output that writes bytes
+	 * directly. The returned array is shared and must not be modified.
+	 * 
+	 * @return the encoded command prompt
+	 */
+	byte[] getInstructionsBytes() {
+		return ENCODED.get(getInstructionsString());
 	}
 	
 	/**
@@ -148,69 +307,268 @@ public class CoffeeMakerQuestImpl implements CoffeeMakerQuest {
 	 * @return response string for the command
 	 */
 	public String processCommand(String cmd) {
-		switch(cmd.toUpperCase()) {
-		case "N":
+		return processCommand((CharSequence) cmd);
+	}
+	
+	/**
+	 * Same as processCommand(String), but accepts any character sequence (for example
+	 * a reused buffer) and classifies it without allocating.
+	 * 
+	 * @param cmd the user command
+	 * @return response string for the command
+	 */
+	public String processCommand(CharSequence cmd) {
+		Command command = Command.of(cmd);
+		if(journal != null || metrics != null) {
+			return executeObserved(command);
+		}
+		return execute(command);
+	}
+	
+	/**
+	 * Same as processCommand(CharSequence), but appends the response to out instead of
+	 * returning it. The response is appended as the constant fragments it is made of, so
+	 * no string is built for it.
+	 * 
+	 * @param cmd the user command
+	 * @param out where the response is written
+	 * @throws IOException if out throws it
+	 */
+	public void processCommand(CharSequence cmd, Appendable out) throws IOException {
+		Command command = Command.of(cmd);
+		if(journal != null || metrics != null) {
+			out.append(executeObserved(command));
+		}
+		else if(command == Command.DRINK) {
+			out.append(drinkUp()).append(drinkOutcome.getMessage());
+		}
+		else {
+			out.append(execute(command));
+		}
+	}
+	
+	/**
+	 * Same as processCommand(CharSequence), but writes the response to out encoded as
+	 * UTF-8. The fragments the response is made of are encoded once for all games, so a
+	 * command writes bytes without allocating.
+	 * 
+	 * @param cmd the user command
+	 * @param out where the response is written; it needs MAX_RESPONSE_BYTES remaining
+	 * @throws BufferOverflowException if out does not have room for the response
+	 */
+	public void processCommand(CharSequence cmd, ByteBuffer out) {
+		Command command = Command.of(cmd);
+		if(journal != null || metrics != null) {
+			put(out, executeObserved(command));
+		}
+		else if(command == Command.DRINK) {
+			put(out, drinkUp());
+			put(out, drinkOutcome.getMessage());
+		}
+		else {
+			put(out, execute(command));
+		}
+	}
+	
+	// Write s to out as UTF-8, using its pre-encoded bytes if it is one of the constant fragments
+	private static void put(ByteBuffer out, String s) {
+		byte[] bytes = ENCODED.get(s);
+		out.put(bytes != null ? bytes : s.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	// Run a command, recording it in the journal and metrics
+	private String executeObserved(Command cmd) {
+		boolean timed = metrics != null && (unsampled++ & (QuestMetrics.SAMPLE_EVERY - 1)) == 0;
+		long start = timed ? System.nanoTime() : 0;
+		String response = execute(cmd);
+		if(metrics != null) {
+			unpublished[cmd.ordinal()]++;
+			if(timed) {
+				metrics.record(cmd, System.nanoTime() - start);
+				publishMetrics();
+			}
+			else if(drank) {
+				publishMetrics();
+			}
+		}
+		if(journal != null) {
+			journal.append(sessionId, cmd, response);
+		}
+		return response;
+	}
+	
+	// Run a command without recording it in the journal
+	String execute(Command cmd) {
+		switch(cmd) {
+		case NORTH:
 			return moveNorth();
 			
-		case "S":
+		case SOUTH:
 			return moveSouth();
+			
+		case EAST:
+		case WEST:
+			// A chain world has no east or west doors, and the commands do not exist there
+			if(world.isChain()) {
+				return WHAT;
+			}
+			return move(cmd.getDirection());
 				
-		case "L":
+		case LOOK:
 			return look();
 			
-		case "I":
+		case INVENTORY:
 			return displayInventory();
 				
-		case "D":
+		case DRINK:
 			String ret = drink();
 			return ret;
 			
-		case "H":
+		case HELP:
 			return displayHelp();
+			
+		default:
+			return WHAT;
 		}
-		return "What?\n";
 	}
 	
-	public String moveNorth() {
-		if(currRoom >= rooms.size()-1) {
-			return doorDoesNotExist();
+	/**
+	 * Runs a script of commands and appends the response of each command to out. The
+	 * output is the same as calling processCommand for every command in turn, but in a
+	 * chain world runs of moves are applied as a single jump.
+	 * Commands are separated by whitespace. A command may be followed by "*" and a count
+	 * to repeat it, e.g. "N*40 L S*12 L D". A token that does not fit this form is a
+	 * single command of its own, so it gets "What?" just like processCommand would.
+	 * Execution stops as soon as the game is over.
+	 * 
+	 * @param script the commands to run
+	 * @param out    where the responses are written
+	 * @throws IOException if out throws it
+	 */
+	public void processCommands(CharSequence script, Appendable out) throws IOException {
+		int length = script.length();
+		int pos = 0;
+		while(pos < length && !isGameOver()) {
+			while(pos < length && Character.isWhitespace(script.charAt(pos))) {
+				pos++;
+			}
+			if(pos == length) {
+				break;
+			}
+			int start = pos;
+			int star = -1;
+			while(pos < length && !Character.isWhitespace(script.charAt(pos))) {
+				if(script.charAt(pos) == '*') {
+					star = pos;
+				}
+				pos++;
+			}
+			int end = pos;
+			int count = 1;
+			if(star > start) {
+				count = parseCount(script, star + 1, end);
+				if(count < 0) {
+					count = 1;
+				}
+				else {
+					end = star;
+				}
+			}
+			runCommand(Command.of(script, start, end), count, out);
 		}
-		currRoom++;
-		return "";
+	}
+	
+	// Parse the repeat count of a script token, or return -1 if it is not a valid count
+	private static int parseCount(CharSequence script, int start, int end) {
+		if(start == end) {
+			return -1;
+		}
+		long count = 0;
+		for(int i = start; i < end; i++) {
+			char c = script.charAt(i);
+			if(c < '0' || c > '9') {
+				return -1;
+			}
+			count = count * 10 + (c - '0');
+			if(count > Integer.MAX_VALUE) {
+				return -1;
+			}
+		}
+		return (int) count;
+	}
+	
+	// Run cmd count times, stopping once the game is over
+	private void runCommand(Command cmd, int count, Appendable out) throws IOException {
+		if((cmd != Command.NORTH && cmd != Command.SOUTH) || !world.isChain()) {
+			for(int i = 0; i < count && !isGameOver(); i++) {
+				out.append(journal != null || metrics != null ? executeObserved(cmd) : execute(cmd));
+			}
+			return;
+		}
+		int failed;
+		if(cmd == Command.NORTH) {
+			int north = Math.min(count, Math.max(world.lastReachable() - currRoom, 0));
+			currRoom += north;
+			failed = count - north;
+		}
+		else {
+			int south = Math.min(count, currRoom);
+			currRoom -= south;
+			failed = count - south;
+		}
+		if(metrics != null) {
+			unpublished[cmd.ordinal()] += count;
+		}
+		if(journal != null) {
+			// Journal the jump as the single moves it stands for
+			for(int i = 0; i < count; i++) {
+				journal.append(sessionId, cmd, i < count - failed ? "" : doorDoesNotExist());
+			}
+		}
+		for(int i = 0; i < failed; i++) {
+			out.append(doorDoesNotExist());
+		}
+	}
+	
+	public String moveNorth() {
+		return move(Direction.NORTH);
 	}
 	
 	public String moveSouth() {
-		if(currRoom == 0) {
+		return move(Direction.SOUTH);
+	}
+	
+	// Go through the door of the current room in the given direction, if there is one
+	private String move(Direction direction) {
+		int next = world.exit(currRoom, direction);
+		if(next < 0) {
 			return doorDoesNotExist();
 		}
-		currRoom--;
+		currRoom = next;
 		return "";
 	}
 	
 	private String doorDoesNotExist() {
-		return "A door in that direction does not exist.\n";
+		return NO_DOOR;
 	}
 	
 	public String look() {
-		String msg = "";
 		Item item = getCurrentRoom().getItem();
 		player.addItem(item);
 		if(item != Item.NONE) {
-			msg += "There might be something here...\n";
 			if(item == Item.COFFEE) {
-				msg += "You found some caffeinated coffee!\n";
+				return COFFEE_FOUND;
 			}
 			else if(item == Item.CREAM) {
-				msg += "You found some creamy cream!\n";
+				return CREAM_FOUND;
 			}
 			else {
-				msg += "You found some sweet sugar!\n";
+				return SUGAR_FOUND;
 			}
 		}
 		else {
-			msg += "You don't see anything out of the ordinary.\n";
+			return NOTHING_FOUND;
 		}
-		return msg;
 	}
 	
 	public String displayInventory() {
@@ -219,46 +577,118 @@ public class CoffeeMakerQuestImpl implements CoffeeMakerQuest {
 	}
 	
 	public String drink() {
+		String inventory = drinkUp();
+		return inventory + drinkOutcome.getMessage();
+	}
+	
+	// Drink and set the outcome; returns the inventory string shown before its message
+	private String drinkUp() {
 		drank = true;
-		String msg = player.getInventoryString();
-		// win condition
-		if (player.checkCoffee() && player.checkCream() && player.checkSugar()) {
-			msg += "\nYou drink the beverage and are ready to study!";
-			msg += "\nYou win!\n";
+		int mask = 0;
+		if(player.checkCoffee()) {
+			mask |= Player.COFFEE;
 		}
-		// all lose condition outputs
-		else {
-			if(player.checkCoffee()) {
-				if(!player.checkCream()) {
-					msg += "\nWithout cream, you get an ulcer and cannot study.";
-				}
-				else {
-					msg += "\nWithout sugar, the coffee is too bitter. You cannot study.";
-				}
-			}
-			else if(player.checkCream()) {
-				if(!player.checkSugar()) {
-					msg += "\nYou drink the cream, but without caffeine, you cannot study.";
-				}
-				else {
-					msg += "\nYou drink the sweetened cream, but without caffeine you cannot study.";
-				}
-			}
-			else if(player.checkSugar()) {
-				msg += "\nYou eat the sugar, but without caffeine, you cannot study.";
-			}
-			else {
-				msg += "\nYou drink the air, as you have no coffee, sugar, or cream.\nThe air is invigorating, but not invigorating enough. You cannot study.";
-			}
-			msg += "\nYou lose!\n";
+		if(player.checkCream()) {
+			mask |= Player.CREAM;
+		}
+		if(player.checkSugar()) {
+			mask |= Player.SUGAR;
+		}
+		drinkOutcome = DrinkOutcome.forInventory(mask);
+		return player.getInventoryString();
+	}
+	
+	/**
+	 * Returns the outcome of the drink that ended the game.
+	 * 
+	 * @return the outcome, or null if the player has not drunk yet
+	 */
+	public DrinkOutcome getDrinkOutcome() {
+		return drinkOutcome;
+	}
+
+	/**
+	 * Returns the fewest commands that win the game from here (see WinPathOracle).
+	 * 
+	 * @return the number of commands, or -1 if the game is over, the current room is not set, the game cannot be won or the world has no oracle
+	 */
+	int commandsToWin() {
+		WinPathOracle oracle = world.getWinPathOracle();
+		if(drank || !initializedCurrRoom || oracle == null) {
+			return -1;
+		}
+		return oracle.commandsToWin(currRoom, player.inventoryMask());
+	}
+	
+	/**
+	 * Returns a shortest script for processCommands that wins the game from here.
+	 * 
+	 * @return the script, or null if the game is over, the current room is not set, the game cannot be won or the world has no oracle
+	 */
+	String winScript() {
+		WinPathOracle oracle = world.getWinPathOracle();
+		if(drank || !initializedCurrRoom || oracle == null) {
+			return null;
+		}
+		return oracle.winScript(currRoom, player.inventoryMask());
+	}
+	
+	/**
+	 * Encodes the state of this session into a long: the current room index, whether it
+	 * was initialized, the player inventory, whether the player drank and what the drink
+	 * was made of. The world itself is not part of the snapshot; restore it into a session
+	 * of the same world (see World.contentHash).
+	 * 
+	 * @return the session state
+	 */
+	long snapshot() {
+		long state = currRoom & 0xFFFFFFFFL;
+		if(player != null) {
+			state |= (long) player.inventoryMask() << SNAPSHOT_INVENTORY_SHIFT;
+		}
+		if(initializedCurrRoom) {
+			state |= SNAPSHOT_INITIALIZED;
+		}
+		if(drank) {
+			state |= SNAPSHOT_DRANK | (long) drinkOutcome.getMask() << SNAPSHOT_DRUNK_SHIFT;
+		}
+		return state;
+	}
+	
+	/**
+	 * Puts this session back into the state returned by snapshot(). The player must
+	 * have been set; its inventory is replaced.
+	 * 
+	 * @param state a value returned by snapshot() in a session of the same world
+	 * @throws IllegalArgumentException if the current room is not in this world
+	 */
+	void restore(long state) {
+		int room = (int) state;
+		if(room < 0 || (room >= world.size() && room > 0)) {
+			throw new IllegalArgumentException("No room " + room + " in a world of " + world.size());
+		}
+		currRoom = room;
+		initializedCurrRoom = (state & SNAPSHOT_INITIALIZED) != 0;
+		player.setInventoryMask((int) (state >>> SNAPSHOT_INVENTORY_SHIFT) & 7);
+		drank = (state & SNAPSHOT_DRANK) != 0;
+		drinkOutcome = drank ? DrinkOutcome.forInventory((int) (state >>> SNAPSHOT_DRUNK_SHIFT) & 7) : null;
+		if(journal != null) {
+			journal.appendRestore(sessionId, state);
 		}
-		return msg;
 	}
 
 	public String displayHelp() {
+		return world.isChain() ? CHAIN_HELP : GRAPH_HELP;
+	}
+	
+	private static String help(boolean graph) {
 		String msg = "";
 		msg += "N - Go north\n";
 		msg += "S - Go south\n";
+		if(graph) {
+			msg += "E - Go east\n";
+			msg += "W - Go west\n";
+		}
 		msg += "L - Look and collect any items in the room\n";
 		msg += "I - Show inventory of items collected\n";
 		msg += "D - Drink coffee made from items in inventory\n";
@@ -5,8 +5,30 @@ import org.junit.*;
 import org.mockito.*;
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 public class CoffeeMakerQuestTest {
 
@@ -389,6 +411,1238 @@ public class CoffeeMakerQuestTest {
 		assertEquals("YOU HAVE NO COFFEE!\nYOU HAVE NO CREAM!\nYOU HAVE NO SUGAR!\n\nYou drink the air, as you have no coffee, sugar, or cream.\nThe air is invigorating, but not invigorating enough. You cannot study.\nYou lose!\n", cmq.processCommand("D"));
 	}
 	
+	/**
+	 * Test case for boolean addRoomAtNorth(Room room, String northDoor, String southDoor).
+	 * Preconditions: room1 ~ room6 have been added to cmq.
+	 *                Create a mock room with adjective "rOUGH" and an unused furnishing, and assign to myRoom.
+	 * Execution steps: Call cmq.addRoomAtNorth(myRoom, "North", "South").
+	 * Postconditions: Return value is false (adjectives are compared ignoring case).
+	 *                 room6.setNorthDoor("North") is not called.
+	 */
+	@Test
+	public void testAddRoomAtNorthDuplicateAdjectiveIgnoringCase() {
+		Room myRoom = mock(Room.class);
+		when(myRoom.getAdjective()).thenReturn("rOUGH");
+		when(myRoom.getFurnishing()).thenReturn("Fake bed");
+		assertFalse(cmq.addRoomAtNorth(myRoom, "North", "South"));
+		verify(room6, Mockito.never()).setNorthDoor("North");
+	}
+	
+	/**
+	 * Test case for boolean addRoomAtNorth(Room room, String northDoor, String southDoor).
+	 * Preconditions: Bug injection is turned off for Room.
+	 *                80,000 rooms with unique adjectives and furnishings.
+	 * Execution steps: Add the first 10,000 rooms, then all 80,000, to new games with
+	 *                  addRoomAtNorth, five times each, keeping the fastest time of each size.
+	 *                  Call addRoomAtNorth on the last game with a room whose furnishing differs
+	 *                  only in case from one already in it.
+	 * Postconditions: Every room is added, and eight times the rooms take less than 32 times as
+	 *                 long (a scan of all previous rooms per call would take 64 times as long).
+	 *                 The room with the repeated furnishing is refused.
+	 */
+	@Test(timeout = 60000)
+	public void testAddRoomAtNorthScalesLinearly() {
+		Config.setBuggyRoom(false);
+		Room[] rooms = new Room[80000];
+		String[] northDoors = new String[rooms.length];
+		String[] southDoors = new String[rooms.length];
+		for(int i = 0; i < rooms.length; i++) {
+			rooms[i] = new Room("Furnishing " + i, "Adjective " + i, Item.NONE);
+			northDoors[i] = "North " + i;
+			southDoors[i] = "South " + i;
+		}
+		// Warm up, so that the JIT does not count against the smaller size
+		buildNorthChain(rooms, northDoors, southDoors, rooms.length / 8);
+		long small = Long.MAX_VALUE;
+		long large = Long.MAX_VALUE;
+		CoffeeMakerQuest big = null;
+		for(int run = 0; run < 5; run++) {
+			System.gc();
+			long start = System.nanoTime();
+			buildNorthChain(rooms, northDoors, southDoors, rooms.length / 8);
+			small = Math.min(small, System.nanoTime() - start);
+			big = null;
+			System.gc();
+			start = System.nanoTime();
+			big = buildNorthChain(rooms, northDoors, southDoors, rooms.length);
+			large = Math.min(large, System.nanoTime() - start);
+		}
+		assertTrue("10,000 rooms took " + small / 1000000 + " ms and 80,000 took " + large / 1000000 + " ms",
+				large < 32 * small);
+		assertFalse(big.addRoomAtNorth(new Room("FURNISHING 123", "Unused", Item.NONE), "North", "South"));
+	}
+	
+	// A new game of the first count rooms, added with addRoomAtNorth
+	private static CoffeeMakerQuest buildNorthChain(Room[] rooms, String[] northDoors, String[] southDoors, int count) {
+		CoffeeMakerQuest game = CoffeeMakerQuest.createInstance();
+		assertTrue(game.addFirstRoom(rooms[0]));
+		for(int i = 1; i < count; i++) {
+			assertTrue(game.addRoomAtNorth(rooms[i], northDoors[i], southDoors[i]));
+		}
+		return game;
+	}
+	
+	/**
+	 * Test case for void setCurrentRoom(Room room) and Room getCurrentRoom().
+	 * Preconditions: room1 ~ room6 have been added to cmq.
+	 *                cmq.setCurrentRoom(room3) has been called.
+	 *                Create a mock room that is not in the game, and assign to myRoom.
+	 * Execution steps: Call cmq.setCurrentRoom(myRoom).
+	 *                  Call cmq.getCurrentRoom().
+	 * Postconditions: Return value of cmq.setCurrentRoom(myRoom) is false.
+	 *                 Return value of cmq.getCurrentRoom() is room3.
+	 */
+	@Test
+	public void testSetCurrentRoomUnknown() {
+		Room myRoom = mock(Room.class);
+		cmq.setCurrentRoom(room3);
+		assertFalse(cmq.setCurrentRoom(myRoom));
+		assertEquals(room3, cmq.getCurrentRoom());
+	}
+	
+	/**
+	 * Test case for void setCurrentRoom(Room room) and Room getCurrentRoom().
+	 * Preconditions: room1 ~ room6 have been added to cmq.
+	 *                cmq.setCurrentRoom(Room room) has not yet been called.
+	 *                Create a mock room that is not in the game, and assign to myRoom.
+	 * Execution steps: Call cmq.setCurrentRoom(myRoom).
+	 *                  Call cmq.getCurrentRoom().
+	 * Postconditions: Return value of cmq.setCurrentRoom(myRoom) is false.
+	 *                 Return value of cmq.getCurrentRoom() is room1 (the location is now initialized).
+	 */
+	@Test
+	public void testSetCurrentRoomUnknownInitializes() {
+		Room myRoom = mock(Room.class);
+		assertFalse(cmq.setCurrentRoom(myRoom));
+		assertEquals(room1, cmq.getCurrentRoom());
+	}
+	
+	/**
+	 * Test case for boolean addRoomsAtNorth(List<Room> rooms, List<String> northDoors, List<String> southDoors).
+	 * Preconditions: room1 ~ room6 have been added to cmq.
+	 *                Create mock rooms "Fake" (with "Fake bed") and "Other" (with "Other bed"), and assign to myRoom1 and myRoom2.
+	 * Execution steps: Call cmq.addRoomsAtNorth([myRoom1, myRoom2], ["North1", "North2"], ["South1", "South2"]).
+	 *                  Call cmq.setCurrentRoom(myRoom2).
+	 * Postconditions: Return value of cmq.addRoomsAtNorth is true.
+	 *                 room6.setNorthDoor("North1") and myRoom1.setNorthDoor("North2") are called.
+	 *                 myRoom1.setSouthDoor("South1") and myRoom2.setSouthDoor("South2") are called.
+	 *                 Return value of cmq.setCurrentRoom(myRoom2) is true.
+	 */
+	@Test
+	public void testAddRoomsAtNorthUnique() {
+		Room myRoom1 = mock(Room.class);
+		when(myRoom1.getAdjective()).thenReturn("Fake");
+		when(myRoom1.getFurnishing()).thenReturn("Fake bed");
+		Room myRoom2 = mock(Room.class);
+		when(myRoom2.getAdjective()).thenReturn("Other");
+		when(myRoom2.getFurnishing()).thenReturn("Other bed");
+		assertTrue(cmq.addRoomsAtNorth(Arrays.asList(myRoom1, myRoom2), Arrays.asList("North1", "North2"), Arrays.asList("South1", "South2")));
+		verify(room6).setNorthDoor("North1");
+		verify(myRoom1).setNorthDoor("North2");
+		verify(myRoom1).setSouthDoor("South1");
+		verify(myRoom2).setSouthDoor("South2");
+		assertTrue(cmq.setCurrentRoom(myRoom2));
+	}
+	
+	/**
+	 * Test case for boolean addRoomsAtNorth(List<Room> rooms, List<String> northDoors, List<String> southDoors).
+	 * Preconditions: room1 ~ room6 have been added to cmq.
+	 *                Create mock rooms "Fake" (with "Fake bed") and "fake" (with "Other bed"), and assign to myRoom1 and myRoom2.
+	 * Execution steps: Call cmq.addRoomsAtNorth([myRoom1, myRoom2], ["North1", "North2"], ["South1", "South2"]).
+	 *                  Call cmq.setCurrentRoom(myRoom1).
+	 * Postconditions: Return value of cmq.addRoomsAtNorth is false (duplicate inside the batch).
+	 *                 No door is labeled.
+	 *                 Return value of cmq.setCurrentRoom(myRoom1) is false.
+	 */
+	@Test
+	public void testAddRoomsAtNorthDuplicateInBatch() {
+		Room myRoom1 = mock(Room.class);
+		when(myRoom1.getAdjective()).thenReturn("Fake");
+		when(myRoom1.getFurnishing()).thenReturn("Fake bed");
+		Room myRoom2 = mock(Room.class);
+		when(myRoom2.getAdjective()).thenReturn("fake");
+		when(myRoom2.getFurnishing()).thenReturn("Other bed");
+		assertFalse(cmq.addRoomsAtNorth(Arrays.asList(myRoom1, myRoom2), Arrays.asList("North1", "North2"), Arrays.asList("South1", "South2")));
+		verify(room6, Mockito.never()).setNorthDoor(anyString());
+		verify(myRoom1, Mockito.never()).setSouthDoor(anyString());
+		assertFalse(cmq.setCurrentRoom(myRoom1));
+	}
+	
+	/**
+	 * Test case for CoffeeMakerQuestImpl backed by a RoomTable.
+	 * Preconditions: Bug injection is turned off for Room and Player.
+	 *                Two games with the six rooms of the original Coffee Maker Quest, one
+	 *                using the default room storage and one using a RoomTable.
+	 * Execution steps: Call setCurrentRoom with the first room, then run the same commands
+	 *                  on both games, comparing getCurrentRoom().getDescription() and the
+	 *                  response of processCommand after every command.
+	 * Postconditions: Both games produce the same descriptions and responses.
+	 *                 setCurrentRoom finds a room of the RoomTable game by its content.
+	 *                 Room faults limited to getDescription or getDescriptionBytes fire only in
+	 *                 that method of a RoomTable room.
+	 */
+	@Test
+	public void testRoomTableBehavesLikeDefaultStorage() {
+		Config.setBuggyRoom(false);
+		Config.setBuggyPlayer(false);
+		CoffeeMakerQuestImpl listGame = new CoffeeMakerQuestImpl();
+		CoffeeMakerQuestImpl tableGame = new CoffeeMakerQuestImpl(new RoomTable());
+		for(CoffeeMakerQuestImpl game : Arrays.asList(listGame, tableGame)) {
+			Room first = new Room("Quaint sofa", "Small", Item.CREAM);
+			game.addFirstRoom(first);
+			game.addRoomAtNorth(new Room("Sad record player", "Funny", Item.NONE), "Magenta", "Massive");
+			game.addRoomAtNorth(new Room("Tight pizza", "Refinanced", Item.COFFEE), "Beige", "Smart");
+			game.addRoomAtNorth(new Room("Flat energy drink", "Dumb", Item.NONE), "Dead", "Slim");
+			game.addRoomAtNorth(new Room("Beautiful bag of money", "Bloodthirsty", Item.NONE), "Vivacious", "Sandy");
+			game.addRoomAtNorth(new Room("Perfect air hockey table", "Rough", Item.SUGAR), "Purple", "Minimalist");
+			game.setPlayer(new Player());
+			assertTrue(game.setCurrentRoom(first));
+		}
+		for(String cmd : Arrays.asList("L", "s", "N", "n", "l", "I", "N", "N", "N", "n", "L", "H", "x", "S", "D")) {
+			assertEquals(listGame.getCurrentRoom().getDescription(), tableGame.getCurrentRoom().getDescription());
+			assertEquals(listGame.processCommand(cmd), tableGame.processCommand(cmd));
+		}
+		assertTrue(tableGame.isGameOver());
+		assertTrue(tableGame.setCurrentRoom(new Room("Tight pizza", "Refinanced", Item.COFFEE)));
+		assertEquals(tableGame.getCurrentRoom(), tableGame.getCurrentRoom());
+		assertEquals("Refinanced", tableGame.getCurrentRoom().getAdjective());
+		assertDescriptionFaultsApart(tableGame.getCurrentRoom());
+	}
+	
+	/**
+	 * Test case for String Room.getDescription().
+	 * Preconditions: Bug injection is turned off for Room.
+	 *                Create a "Small" room with "Quaint sofa" furnishing and assign to myRoom.
+	 * Execution steps: Call myRoom.getDescription() twice.
+	 *                  Call myRoom.setNorthDoor("Magenta") and myRoom.getDescription().
+	 *                  Turn on bug injection for Room and call myRoom.getDescription().
+	 * Postconditions: Repeated calls return the same cached string.
+	 *                 After setNorthDoor, the description includes the north door.
+	 *                 getDescriptionBytes() is the UTF-8 encoding of the description.
+	 *                 With bug injection on, getDescription() throws even though a cached value exists.
+	 */
+	@Test
+	public void testRoomDescriptionCache() {
+		Config.setBuggyRoom(false);
+		Room myRoom = new Room("Quaint sofa", "Small", Item.CREAM);
+		String desc = myRoom.getDescription();
+		assertEquals("You see a Small room.\nIt has a Quaint sofa.\n", desc);
+		assertSame(desc, myRoom.getDescription());
+		myRoom.setNorthDoor("Magenta");
+		assertEquals("You see a Small room.\nIt has a Quaint sofa.\nA Magenta door leads North.\n", myRoom.getDescription());
+		assertArrayEquals(myRoom.getDescription().getBytes(StandardCharsets.UTF_8), myRoom.getDescriptionBytes());
+		Config.setBuggyRoom(true);
+		try {
+			myRoom.getDescription();
+			fail("Expected injected bug");
+		} catch(UnsupportedOperationException e) {
+			// expected
+		}
+	}
+	
+	/**
+	 * Test case for Player inventory.
+	 * Preconditions: Bug injection is turned off for Player.
+	 *                Create a Player and assign to myPlayer.
+	 * Execution steps: Call myPlayer.addItem(Item.CREAM), myPlayer.addItem(Item.NONE) and myPlayer.addItem(Item.SUGAR).
+	 * Postconditions: myPlayer.inventoryMask() is Player.CREAM | Player.SUGAR.
+	 *                 myPlayer.getInventoryString() is "YOU HAVE NO COFFEE!\nYou have some fresh cream.\nYou have some tasty sugar.\n".
+	 *                 Repeated calls to getInventoryString() return the same string.
+	 */
+	@Test
+	public void testPlayerInventory() {
+		Config.setBuggyPlayer(false);
+		Player myPlayer = new Player();
+		assertEquals(0, myPlayer.inventoryMask());
+		assertEquals("YOU HAVE NO COFFEE!\nYOU HAVE NO CREAM!\nYOU HAVE NO SUGAR!\n", myPlayer.getInventoryString());
+		myPlayer.addItem(Item.CREAM);
+		myPlayer.addItem(Item.NONE);
+		myPlayer.addItem(Item.SUGAR);
+		assertEquals(Player.CREAM | Player.SUGAR, myPlayer.inventoryMask());
+		assertFalse(myPlayer.checkCoffee());
+		assertTrue(myPlayer.checkCream());
+		assertTrue(myPlayer.checkSugar());
+		assertEquals("YOU HAVE NO COFFEE!\nYou have some fresh cream.\nYou have some tasty sugar.\n", myPlayer.getInventoryString());
+		assertSame(myPlayer.getInventoryString(), myPlayer.getInventoryString());
+	}
+	
+	/**
+	 * Test case for String processCommand(CharSequence cmd).
+	 * Preconditions: room1 ~ room6 have been added to cmq.
+	 *                cmq.setCurrentRoom(room4) has been called.
+	 * Execution steps: Call cmq.processCommand with a StringBuilder containing "n".
+	 *                  Call cmq.processCommand with "NN", "" and "  n".
+	 * Postconditions: Return value for the StringBuilder is "" and the current room is room5.
+	 *                 Return value for "NN", "" and "  n" is "What?\n".
+	 */
+	@Test
+	public void testProcessCommandCharSequence() {
+		cmq.setCurrentRoom(room4);
+		assertEquals("", cmq.processCommand(new StringBuilder("n")));
+		assertEquals(room5, cmq.getCurrentRoom());
+		assertEquals("What?\n", cmq.processCommand("NN"));
+		assertEquals("What?\n", cmq.processCommand(""));
+		assertEquals("What?\n", cmq.processCommand("  n"));
+		assertEquals(room5, cmq.getCurrentRoom());
+	}
+	
+	/**
+	 * Test case for DrinkOutcome getDrinkOutcome().
+	 * Preconditions: Player has coffee and sugar but no cream.
+	 * Execution steps: Call cmq.getDrinkOutcome().
+	 *                  Call cmq.processCommand("D").
+	 *                  Call cmq.getDrinkOutcome().
+	 * Postconditions: Return value of the first cmq.getDrinkOutcome() is null.
+	 *                 Return value of cmq.processCommand("D") ends with the ulcer message and "You lose!\n".
+	 *                 The second cmq.getDrinkOutcome() is a loss with reason NO_CREAM.
+	 */
+	@Test
+	public void testGetDrinkOutcome() {
+		when(player.checkCoffee()).thenReturn(true);
+		when(player.checkSugar()).thenReturn(true);
+		when(player.getInventoryString()).thenReturn("You have a cup of delicious coffee.\nYOU HAVE NO CREAM!\nYou have some tasty sugar.\n");
+		assertNull(cmq.getDrinkOutcome());
+		assertEquals("You have a cup of delicious coffee.\nYOU HAVE NO CREAM!\nYou have some tasty sugar.\n\nWithout cream, you get an ulcer and cannot study.\nYou lose!\n", cmq.processCommand("D"));
+		DrinkOutcome outcome = cmq.getDrinkOutcome();
+		assertFalse(outcome.isWin());
+		assertEquals(DrinkOutcome.Reason.NO_CREAM, outcome.getReason());
+	}
+	
+	/**
+	 * Test case for void processCommands(CharSequence script, Appendable out).
+	 * Preconditions: room1 ~ room6 have been added to cmq.
+	 *                cmq.setCurrentRoom(room1) has been called.
+	 *                Player has no items.
+	 * Execution steps: Call cmq.processCommands("N*3 s x*2 N*9 L D N", out).
+	 * Postconditions: out holds the responses of the individual commands: "What?\n" twice,
+	 *                 "A door in that direction does not exist.\n" six times (N*9 from room3
+	 *                 only gets three rooms north, to room6), then the look and drink responses.
+	 *                 The final "N" is not run because the game is over, so the current room is room6.
+	 */
+	@Test
+	public void testProcessCommands() throws IOException {
+		when(player.getInventoryString()).thenReturn("YOU HAVE NO COFFEE!\nYOU HAVE NO CREAM!\nYOU HAVE NO SUGAR!\n");
+		cmq.setCurrentRoom(room1);
+		StringBuilder out = new StringBuilder();
+		cmq.processCommands("N*3 s x*2 N*9 L D N", out);
+		String noDoor = "A door in that direction does not exist.\n";
+		assertEquals("What?\nWhat?\n" + noDoor + noDoor + noDoor + noDoor + noDoor + noDoor
+				+ "There might be something here...\nYou found some sweet sugar!\n"
+				+ "YOU HAVE NO COFFEE!\nYOU HAVE NO CREAM!\nYOU HAVE NO SUGAR!\n\nYou drink the air, as you have no coffee, sugar, or cream.\nThe air is invigorating, but not invigorating enough. You cannot study.\nYou lose!\n",
+				out.toString());
+		assertTrue(cmq.isGameOver());
+		assertEquals(room6, cmq.getCurrentRoom());
+	}
+	
+	/**
+	 * Test case for GameServer and GameLoadClient.
+	 * Preconditions: Bug injection is turned off for Room and Player.
+	 *                A GameServer is serving the world of Game on a free local port.
+	 * Execution steps: Run 40 sessions, 8 at a time, each sending the winning commands.
+	 * Postconditions: All 40 sessions are played and won, and every command got a response.
+	 */
+	@Test(timeout = 20000)
+	public void testGameServerSessions() throws Exception {
+		Config.setBuggyRoom(false);
+		Config.setBuggyPlayer(false);
+		try(GameServer server = new GameServer(Game.createWorld(), 0)) {
+			new Thread(server::serve).start();
+			GameLoadClient.Report report = GameLoadClient.run(server.getPort(), 40, 8, GameLoadClient.WINNING_COMMANDS);
+			assertEquals(40, report.sessions);
+			assertEquals(40, report.wins);
+			assertEquals(40 * GameLoadClient.WINNING_COMMANDS.length, report.latencies.length);
+		}
+	}
+	
+	/**
+	 * Test case for Game --pipe mode.
+	 * Preconditions: Bug injection is turned off for Room and Player.
+	 *                A command file with "l", "n", "H", "x", "S", "I", "n", "n", "L", "D".
+	 * Execution steps: Run Game.main interactively with the commands as System.in, capturing System.out.
+	 *                  Run Game.main with "--pipe", the command file, an output file and a flush interval of 3.
+	 * Postconditions: The output file is byte-identical to the captured interactive output.
+	 */
+	@Test
+	public void testGamePipeMatchesInteractive() throws Exception {
+		Config.setBuggyRoom(false);
+		Config.setBuggyPlayer(false);
+		String commands = "l\nn\nH\nx\nS\nI\nn\nn\nL\nD\n";
+		InputStream stdin = System.in;
+		PrintStream stdout = System.out;
+		ByteArrayOutputStream interactive = new ByteArrayOutputStream();
+		try {
+			System.setIn(new ByteArrayInputStream(commands.getBytes()));
+			System.setOut(new PrintStream(interactive, true));
+			Game.main(new String[0]);
+		} finally {
+			System.setIn(stdin);
+			System.setOut(stdout);
+		}
+		File in = File.createTempFile("commands", ".txt");
+		File out = File.createTempFile("output", ".txt");
+		try {
+			Files.write(in.toPath(), commands.getBytes());
+			Game.main(new String[] {"--pipe", in.getPath(), out.getPath(), "3"});
+			assertArrayEquals(interactive.toByteArray(), Files.readAllBytes(out.toPath()));
+		} finally {
+			in.delete();
+			out.delete();
+		}
+	}
+	
+	/**
+	 * Test case for FaultInjector.
+	 * Preconditions: Bug injection is turned off for Room.
+	 *                Create a "Small" room with "Quaint sofa" furnishing and assign to myRoom.
+	 * Execution steps: Install a Room fault for this thread that always fails but only for getItem.
+	 *                  Call myRoom.getAdjective() and myRoom.getItem().
+	 *                  Install a Room fault for this thread that always fails but only for getDescription.
+	 *                  Call myRoom.getDescriptionBytes().
+	 *                  Install a Room fault for this thread that never fails, with 1 ms latency.
+	 *                  Call myRoom.getAdjective().
+	 *                  Clear the faults of this thread, call Config.setBuggyRoom(true) and call myRoom.getAdjective().
+	 * Postconditions: getAdjective() succeeds and getItem() throws under the first fault.
+	 *                 getDescriptionBytes() succeeds under the second fault.
+	 *                 getAdjective() succeeds after at least 1 ms under the third fault.
+	 *                 getAdjective() throws once Config.setBuggyRoom(true) applies to this thread again.
+	 */
+	@Test
+	public void testFaultInjectorTargetsMethodsAndAddsLatency() {
+		Config.setBuggyRoom(false);
+		Room myRoom = new Room("Quaint sofa", "Small", Item.CREAM);
+		try {
+			FaultInjector.setThreadRoomFault(new FaultInjector.Fault(1.0, 0, "getItem"));
+			assertEquals("Small", myRoom.getAdjective());
+			try {
+				myRoom.getItem();
+				fail("Expected injected bug");
+			} catch(UnsupportedOperationException e) {
+				assertEquals("Injected bug for Room class", e.getMessage());
+			}
+			FaultInjector.setThreadRoomFault(new FaultInjector.Fault(1.0, 0, "getDescription"));
+			assertNotNull(myRoom.getDescriptionBytes());
+			FaultInjector.setThreadRoomFault(new FaultInjector.Fault(0.0, 1000000));
+			long start = System.nanoTime();
+			assertEquals("Small", myRoom.getAdjective());
+			assertTrue(System.nanoTime() - start >= 1000000);
+		} finally {
+			FaultInjector.clearThreadFaults();
+		}
+		Config.setBuggyRoom(true);
+		try {
+			myRoom.getAdjective();
+			fail("Expected injected bug");
+		} catch(UnsupportedOperationException e) {
+			// expected
+		} finally {
+			Config.setBuggyRoom(false);
+		}
+	}
+	
+	/**
+	 * Test case for FaultInjector with a thread that dies with a fault installed.
+	 * Preconditions: None.
+	 * Execution steps: Start a thread that installs a Room fault for itself and ends without clearing it.
+	 *                  Wait for it to end, then call FaultInjector.clearThreadFaults() in this thread.
+	 * Postconditions: The thread keeps the Room call site armed while it runs.
+	 *                 It no longer does once it has ended and the call site was rearmed.
+	 */
+	@Test
+	public void testFaultInjectorForgetsDeadThreads() throws Exception {
+		boolean[] armedWhileRunning = new boolean[1];
+		Thread thread = new Thread(() -> {
+			FaultInjector.setThreadRoomFault(FaultInjector.Fault.ALWAYS);
+			armedWhileRunning[0] = FaultInjector.roomArmedBy(Thread.currentThread());
+		});
+		thread.start();
+		thread.join();
+		assertTrue(armedWhileRunning[0]);
+		FaultInjector.clearThreadFaults();
+		assertFalse(FaultInjector.roomArmedBy(thread));
+	}
+	
+	/**
+	 * Test case for thread-scoped Config.
+	 * Preconditions: Config is thread-scoped.
+	 *                Create a "Small" room with "Quaint sofa" furnishing and assign to myRoom.
+	 * Execution steps: Call Config.setBuggyRoom(true) in this thread.
+	 *                  Call myRoom.getAdjective() in another thread.
+	 *                  Call myRoom.getAdjective() in this thread.
+	 * Postconditions: The other thread does not see the injected bug and gets "Small".
+	 *                 This thread gets the injected bug.
+	 */
+	@Test
+	public void testConfigThreadScoped() throws Exception {
+		boolean wasScoped = Config.getThreadScoped();
+		Config.setBuggyRoom(false);
+		Config.setThreadScoped(true);
+		Room myRoom = new Room("Quaint sofa", "Small", Item.CREAM);
+		try {
+			Config.setBuggyRoom(true);
+			assertTrue(Config.getBuggyRoom());
+			String[] otherThread = new String[1];
+			Thread thread = new Thread(() -> otherThread[0] = myRoom.getAdjective());
+			thread.start();
+			thread.join();
+			assertEquals("Small", otherThread[0]);
+			try {
+				myRoom.getAdjective();
+				fail("Expected injected bug");
+			} catch(UnsupportedOperationException e) {
+				// expected
+			}
+		} finally {
+			Config.clearThreadValues();
+			Config.setThreadScoped(wasScoped);
+		}
+	}
+	
+	/**
+	 * Test case for SessionSnapshots.
+	 * Preconditions: Bug injection is turned off for Room and Player.
+	 *                Two sessions in the world of Game: one that ran "L N N L" and one that ran "N L D".
+	 * Execution steps: Save both sessions to a file and load them back into a new copy of the world.
+	 *                  Try to load them into a world with one more room.
+	 * Postconditions: The restored sessions have the same room, inventory, game over state and drink outcome.
+	 *                 Loading into the other world throws an IOException.
+	 */
+	@Test
+	public void testSessionSnapshotsRoundTrip() throws Exception {
+		Config.setBuggyRoom(false);
+		Config.setBuggyPlayer(false);
+		World world = Game.createWorld();
+		List<CoffeeMakerQuestImpl> sessions = new ArrayList<CoffeeMakerQuestImpl>();
+		for(String script : new String[] {"L N N L", "N L D"}) {
+			CoffeeMakerQuestImpl session = new CoffeeMakerQuestImpl(world);
+			session.setPlayer(new Player());
+			session.setCurrentRoom(world.get(0));
+			session.processCommands(script, new StringBuilder());
+			sessions.add(session);
+		}
+		File file = File.createTempFile("sessions", ".bin");
+		try {
+			SessionSnapshots.save(file, world, sessions);
+			World copy = Game.createWorld();
+			assertEquals(world.contentHash(), copy.contentHash());
+			List<CoffeeMakerQuestImpl> restored = SessionSnapshots.load(file, copy);
+			assertEquals(2, restored.size());
+			for(int i = 0; i < 2; i++) {
+				assertEquals(sessions.get(i).getCurrentRoom().getDescription(), restored.get(i).getCurrentRoom().getDescription());
+				assertEquals(sessions.get(i).player.inventoryMask(), restored.get(i).player.inventoryMask());
+				assertEquals(sessions.get(i).isGameOver(), restored.get(i).isGameOver());
+				assertSame(sessions.get(i).getDrinkOutcome(), restored.get(i).getDrinkOutcome());
+			}
+			assertEquals(Player.CREAM | Player.COFFEE, restored.get(0).player.inventoryMask());
+			assertTrue(restored.get(1).isGameOver());
+			
+			CoffeeMakerQuestImpl bigger = new CoffeeMakerQuestImpl();
+			Game.addRooms(bigger);
+			bigger.addRoomAtNorth(new Room("Piano", "Loud", Item.NONE), "Green", "Grey");
+			try {
+				SessionSnapshots.load(file, bigger.world);
+				fail("Expected IOException");
+			} catch(IOException e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Test case for CommandJournal and JournalReplayer.
+	 * Preconditions: Bug injection is turned off for Room and Player.
+	 *                Three sessions in the world of Game, journaled with response hashes.
+	 * Execution steps: Session 1 runs "L", "N", "n", "L", "I", "x". Session 2 runs the script "N*3 L S*9 L D".
+	 *                  Session 3 is moved to the fifth room and runs "L", "D", "H".
+	 *                  Close the journal and replay it, then verify it.
+	 * Postconditions: The replayed state of every session equals its snapshot.
+	 *                 Every record verifies.
+	 */
+	@Test
+	public void testCommandJournalReplay() throws Exception {
+		Config.setBuggyRoom(false);
+		Config.setBuggyPlayer(false);
+		World world = Game.createWorld();
+		File file = File.createTempFile("journal", ".bin");
+		try {
+			CoffeeMakerQuestImpl[] sessions = new CoffeeMakerQuestImpl[3];
+			try(CommandJournal journal = new CommandJournal(file, true, 1)) {
+				for(int i = 0; i < sessions.length; i++) {
+					sessions[i] = new CoffeeMakerQuestImpl(world);
+					sessions[i].setPlayer(new Player());
+					sessions[i].setCurrentRoom(world.get(0));
+					sessions[i].setJournal(journal, 100 + i);
+				}
+				for(String cmd : new String[] {"L", "N", "n", "L", "I", "x"}) {
+					sessions[0].processCommand(cmd);
+				}
+				journal.sync();
+				sessions[1].processCommands("N*3 L S*9 L D", new StringBuilder());
+				sessions[2].setCurrentRoom(world.get(4));
+				for(String cmd : new String[] {"L", "D", "H"}) {
+					sessions[2].processCommand(cmd);
+				}
+			}
+			JournalReplayer replayer = new JournalReplayer(world);
+			assertEquals(3 + 6 + 15 + 1 + 3, replayer.replay(file));
+			assertEquals(3, replayer.getSessionIds().length);
+			for(int i = 0; i < sessions.length; i++) {
+				assertEquals(sessions[i].snapshot(), replayer.getState(100 + i));
+			}
+			assertEquals(-1, replayer.getState(99));
+			assertEquals(Player.COFFEE | Player.CREAM, replayer.restore(100).player.inventoryMask());
+			assertEquals(0, new JournalReplayer(world).verify(file));
+		} finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Test case for WinPathOracle.
+	 * Preconditions: Bug injection is turned off for Room and Player.
+	 *                A world of 40 rooms with random items, and a world of 40 rooms without sugar.
+	 * Execution steps: For every room and inventory, ask for the fewest commands to win and a winning script,
+	 *                  and run the script in a session in that room with that inventory.
+	 * Postconditions: The count equals a breadth-first search over (room, inventory) states plus the "D".
+	 *                 The script has that many commands and wins.
+	 *                 Without sugar, the count is -1 and the script null unless the player has sugar.
+	 *                 In the world of Game, the script from the first room is "L N*2 L N*3 L D".
+	 */
+	@Test
+	public void testWinPathOracleMatchesSearch() throws Exception {
+		Config.setBuggyRoom(false);
+		Config.setBuggyPlayer(false);
+		Random random = new Random(17);
+		Item[] roomItems = new Item[40];
+		World world = new World();
+		World noSugar = new World();
+		for(int i = 0; i < roomItems.length; i++) {
+			roomItems[i] = Item.values()[random.nextInt(Item.values().length)];
+			Item withoutSugar = roomItems[i] == Item.SUGAR ? Item.NONE : roomItems[i];
+			if(i == 0) {
+				world.addFirstRoom(new Room("Furnishing 0", "Adjective 0", roomItems[i]));
+				noSugar.addFirstRoom(new Room("Furnishing 0", "Adjective 0", withoutSugar));
+			}
+			else {
+				world.addRoomAtNorth(new Room("Furnishing " + i, "Adjective " + i, roomItems[i]), "North", "South");
+				noSugar.addRoomAtNorth(new Room("Furnishing " + i, "Adjective " + i, withoutSugar), "North", "South");
+			}
+		}
+		for(int room = 0; room < roomItems.length; room++) {
+			for(int inventory = 0; inventory < 8; inventory++) {
+				// Breadth-first search for the fewest moves and looks that collect everything
+				int[] distance = new int[roomItems.length * 8];
+				Arrays.fill(distance, -1);
+				ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+				distance[room * 8 + inventory] = 0;
+				queue.add(room * 8 + inventory);
+				int expected = -1;
+				while(!queue.isEmpty()) {
+					int state = queue.poll();
+					int r = state / 8;
+					int mask = state % 8;
+					if(mask == 7) {
+						expected = distance[state] + 1;
+						break;
+					}
+					int[] next = {r > 0 ? state - 8 : -1, r < roomItems.length - 1 ? state + 8 : -1, r * 8 + (mask | Player.mask(roomItems[r]))};
+					for(int n : next) {
+						if(n >= 0 && distance[n] < 0) {
+							distance[n] = distance[state] + 1;
+							queue.add(n);
+						}
+					}
+				}
+				assertEquals(expected, world.getWinPathOracle().commandsToWin(room, inventory));
+				
+				CoffeeMakerQuestImpl session = new CoffeeMakerQuestImpl(world);
+				session.setPlayer(new Player());
+				session.restore(room | (long) inventory << 32 | CoffeeMakerQuestImpl.SNAPSHOT_INITIALIZED);
+				assertEquals(expected, session.commandsToWin());
+				String script = session.winScript();
+				int commands = 0;
+				for(String token : script.split(" ")) {
+					commands += token.contains("*") ? Integer.parseInt(token.substring(2)) : 1;
+				}
+				assertEquals(expected, commands);
+				session.processCommands(script, new StringBuilder());
+				assertTrue(session.getDrinkOutcome().isWin());
+				assertEquals(-1, session.commandsToWin());
+				
+				boolean hasSugar = (inventory & Player.SUGAR) != 0;
+				assertEquals(hasSugar, noSugar.getWinPathOracle().commandsToWin(room, inventory) > 0);
+				assertEquals(hasSugar, noSugar.getWinPathOracle().winScript(room, inventory) != null);
+			}
+		}
+		assertEquals("L N*2 L N*3 L D", Game.createWorld().getWinPathOracle().winScript(0, 0));
+	}
+	
+	/**
+	 * Test case for PlaythroughSimulator.
+	 * Preconditions: Bug injection is turned off for Room and Player.
+	 *                A simulator for the world of Game.
+	 * Execution steps: Simulate 10000 sweep playthroughs, and twice 100000 random playthroughs with the same seed.
+	 * Postconditions: Every sweep playthrough wins in 9 commands.
+	 *                 Both random simulations report the same counts, which add up to the number of playthroughs.
+	 *                 The random policy both wins and loses.
+	 */
+	@Test
+	public void testPlaythroughSimulator() {
+		Config.setBuggyRoom(false);
+		Config.setBuggyPlayer(false);
+		PlaythroughSimulator simulator = new PlaythroughSimulator(Game.createWorld());
+		PlaythroughSimulator.Report sweep = simulator.run(PlaythroughSimulator.SWEEP, 10000, 100, 1);
+		assertEquals(1.0, sweep.winRate(), 0);
+		assertEquals(9.0, sweep.averagePathLength(), 0);
+		
+		PlaythroughSimulator.Report random = simulator.run(PlaythroughSimulator.RANDOM, 100000, 50, 7);
+		PlaythroughSimulator.Report again = simulator.run(PlaythroughSimulator.RANDOM, 100000, 50, 7);
+		assertArrayEquals(random.reasons, again.reasons);
+		assertEquals(random.commands, again.commands);
+		long total = random.unfinished;
+		for(DrinkOutcome.Reason reason : DrinkOutcome.Reason.values()) {
+			total += random.getCount(reason);
+		}
+		assertEquals(100000, total);
+		assertTrue(random.winRate() > 0 && random.winRate() < 0.1);
+		assertTrue(random.getCount(DrinkOutcome.Reason.NOTHING) > random.getCount(DrinkOutcome.Reason.WIN));
+	}
+	
+	/**
+	 * Test case for QuestMetrics.
+	 * Preconditions: Bug injection is turned off for Room and Player.
+	 *                A session with metrics, whose world of Game is built through it.
+	 *                The metrics are registered as an MBean.
+	 * Execution steps: Process "L" 3 * QuestMetrics.SAMPLE_EVERY times, "x" once, the script "N*2 S" and "D".
+	 *                  Read the counters through the MBean server.
+	 * Postconditions: The counts are 2 N, 1 S, 3 * QuestMetrics.SAMPLE_EVERY L, 1 D and 1 unknown.
+	 *                 6 rooms were added, and L has a 99th percentile latency.
+	 *                 The summary lists every command type.
+	 */
+	@Test
+	public void testQuestMetrics() throws Exception {
+		Config.setBuggyRoom(false);
+		Config.setBuggyPlayer(false);
+		QuestMetrics metrics = new QuestMetrics();
+		CoffeeMakerQuestImpl cmq = new CoffeeMakerQuestImpl();
+		cmq.setMetrics(metrics);
+		cmq.setPlayer(new Player());
+		cmq.setCurrentRoom(Game.addRooms(cmq));
+		for(int i = 0; i < 3 * QuestMetrics.SAMPLE_EVERY; i++) {
+			cmq.processCommand("L");
+		}
+		cmq.processCommand("x");
+		cmq.processCommands("N*2 S", new StringBuilder());
+		cmq.processCommand("D");
+		
+		ObjectName name = metrics.register("test");
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			long[] counts = (long[]) server.getAttribute(name, "CommandCounts");
+			assertArrayEquals(new long[] {2, 1, 3 * QuestMetrics.SAMPLE_EVERY, 0, 1, 0, 1, 0, 0}, counts);
+			assertEquals(3L * QuestMetrics.SAMPLE_EVERY + 5, server.getAttribute(name, "TotalCommands"));
+			assertEquals(6L, server.getAttribute(name, "RoomsAdded"));
+		} finally {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		}
+		assertTrue(metrics.getLatencyPercentileNanos("L", 99) > 0);
+		String summary = metrics.getSummary();
+		for(String command : metrics.getCommandNames()) {
+			assertTrue(summary.contains(command + " "));
+		}
+		metrics.reset();
+		assertEquals(0, metrics.getTotalCommands());
+	}
+	
+	/**
+	 * Test case for graph worlds (World.addRoom and World.connect).
+	 * Preconditions: Bug injection is turned off for Room and Player.
+	 *                For each room store, a chain world of a Hall and a Den, and a session in it.
+	 * Execution steps: Process "E" in the chain world. Add a Cellar, connect Hall east to it and
+	 *                  the Cellar west to the Hall, and try to add doors the rooms already have.
+	 *                  Walk E, W, N, N and E, and run the script "S E W N". Add an Attic at north.
+	 * Postconditions: "E" is "What?" in the chain world and a move in the graph world.
+	 *                 Doors that already exist are refused. Descriptions list the east and west doors.
+	 *                 Moves without a door fail like in a chain, the script ends in the Den,
+	 *                 the Attic is north of the Cellar, and there are no win hints.
+	 */
+	@Test
+	public void testGraphWorld() throws Exception {
+		Config.setBuggyRoom(false);
+		Config.setBuggyPlayer(false);
+		for(World world : new World[] {new World(), new World(new RoomTable())}) {
+			world.addFirstRoom(new Room("Rug", "Hall", Item.COFFEE));
+			world.addRoomAtNorth(new Room("Desk", "Den", Item.CREAM), "Oak", "Ash");
+			CoffeeMakerQuestImpl game = new CoffeeMakerQuestImpl(world);
+			game.setPlayer(new Player());
+			game.setCurrentRoom(world.get(0));
+			assertEquals("What?\n", game.processCommand("E"));
+			assertEquals(" INSTRUCTIONS (N,S,L,I,D,H) > ", game.getInstructionsString());
+			assertTrue(world.isChain());
+			
+			assertEquals(-1, world.addRoom(new Room("Bed", "hall", Item.SUGAR)));
+			assertEquals(2, world.addRoom(new Room("Barrel", "Cellar", Item.SUGAR)));
+			assertFalse(world.isChain());
+			assertTrue(world.connect(0, Direction.EAST, 2, "Teal"));
+			assertTrue(world.connect(2, Direction.WEST, 0, "Plum"));
+			assertFalse(world.connect(0, Direction.EAST, 1, "Red"));
+			assertFalse(world.connect(0, Direction.NORTH, 2, "Red"));
+			assertFalse(world.connect(2, Direction.SOUTH, 3, "Red"));
+			assertEquals(" INSTRUCTIONS (N,S,E,W,L,I,D,H) > ", game.getInstructionsString());
+			assertTrue(game.displayHelp().contains("E - Go east\n"));
+			
+			assertEquals("", game.processCommand("E"));
+			assertEquals("You see a Cellar room.\nIt has a Barrel.\nA Plum door leads West.\n", game.getCurrentRoom().getDescription());
+			assertEquals("", game.processCommand("w"));
+			assertEquals("You see a Hall room.\nIt has a Rug.\nA Oak door leads North.\nA Teal door leads East.\n", game.getCurrentRoom().getDescription());
+			assertEquals("", game.processCommand("N"));
+			assertEquals("A door in that direction does not exist.\n", game.processCommand("N"));
+			assertEquals("A door in that direction does not exist.\n", game.processCommand("E"));
+			StringBuilder out = new StringBuilder();
+			game.processCommands("S E W N", out);
+			assertEquals("", out.toString());
+			assertEquals("Den", game.getCurrentRoom().getAdjective());
+			assertEquals(-1, game.commandsToWin());
+			assertNull(game.winScript());
+			
+			assertTrue(world.addRoomAtNorth(new Room("Trunk", "Attic", Item.NONE), "Gold", "Grey"));
+			assertEquals(3, world.exit(2, Direction.NORTH));
+			assertEquals(2, world.exit(3, Direction.SOUTH));
+			world.freeze();
+			assertEquals(0, world.exit(2, Direction.WEST));
+			assertEquals(-1, world.exit(1, Direction.NORTH));
+		}
+		
+		RoomGraph.Builder builder = new RoomGraph.Builder();
+		builder.addExit(2, Direction.WEST, 0, "Plum");
+		builder.addExit(0, Direction.EAST, 2, "Teal");
+		builder.addExit(2, Direction.NORTH, 1, "Teal");
+		RoomGraph graph = builder.build(3);
+		assertEquals(3, graph.size());
+		assertEquals(1, graph.exit(2, Direction.NORTH));
+		assertEquals("Plum", graph.door(2, Direction.WEST));
+		assertNull(graph.door(1, Direction.SOUTH));
+		assertEquals(-1, graph.exit(1, Direction.SOUTH));
+	}
+	
+	/**
+	 * Test case for ProceduralRoomStore.
+	 * Preconditions: Bug injection is turned off for Room and Player.
+	 *                A world over a corridor of Integer.MAX_VALUE generated rooms with a window of 8 rooms.
+	 * Execution steps: Remember the first room and its description bytes. Walk north a million rooms
+	 *                  through processCommands, looking in 100 of them on the way. Get the first room again,
+	 *                  and set the current room back to the remembered object.
+	 * Postconditions: The world is frozen and rooms cannot be added. At most 8 rooms are materialized.
+	 *                 The regenerated first room is a new object with the same description bytes.
+	 *                 Names are unique and carry their index. A store with the same seed generates the same rooms.
+	 */
+	@Test
+	public void testProceduralRoomStore() throws Exception {
+		Config.setBuggyRoom(false);
+		Config.setBuggyPlayer(false);
+		ProceduralRoomStore store = new ProceduralRoomStore(42, Integer.MAX_VALUE, 8);
+		World world = new World(store);
+		assertTrue(world.isFrozen());
+		assertNull(world.getWinPathOracle());
+		CoffeeMakerQuestImpl game = new CoffeeMakerQuestImpl(world);
+		game.setPlayer(new Player());
+		assertFalse(game.addRoomAtNorth(new Room("Sofa", "Plain", Item.NONE), "Red", "Blue"));
+		Room first = world.get(0);
+		byte[] firstBytes = first.getDescriptionBytes().clone();
+		assertTrue(game.setCurrentRoom(first));
+		assertEquals("A door in that direction does not exist.\n", game.processCommand("S"));
+		
+		for(int i = 0; i < 100; i++) {
+			game.processCommands("N*10000 L", new StringBuilder());
+			String description = game.getCurrentRoom().getDescription();
+			assertTrue(description.startsWith("You see a " + store.adjective((i + 1) * 10000) + " room."));
+			assertTrue(description.contains(" door leads North.\n") && description.contains(" door leads South.\n"));
+		}
+		assertEquals(1000000, game.indexOf(game.getCurrentRoom()));
+		assertTrue(store.materialized() <= 8);
+		assertTrue(store.containsAdjective(store.adjective(123456789).toUpperCase()));
+		assertFalse(store.containsAdjective(store.adjective(5) + "0"));
+		assertEquals(-1, world.indexOf(new Room(store.furnishing(7), store.adjective(7), Item.NONE == store.item(7) ? Item.COFFEE : Item.NONE)));
+		
+		Room again = world.get(0);
+		assertNotSame(first, again);
+		assertArrayEquals(firstBytes, again.getDescriptionBytes());
+		assertTrue(game.setCurrentRoom(first));
+		assertEquals(0, game.indexOf(game.getCurrentRoom()));
+		
+		ProceduralRoomStore same = new ProceduralRoomStore(42, Integer.MAX_VALUE, 1);
+		assertEquals(world.contentHash(), new World(same).contentHash());
+		assertNotEquals(world.contentHash(), new World(new ProceduralRoomStore(43, Integer.MAX_VALUE, 1)).contentHash());
+		for(int index : new int[] {1, 999999, Integer.MAX_VALUE - 1}) {
+			assertEquals(world.get(index).getDescription(), same.get(index).getDescription());
+			assertEquals(world.get(index).getItem(), same.get(index).getItem());
+		}
+		assertFalse(world.get(Integer.MAX_VALUE - 1).getDescription().contains("North"));
+	}
+	
+	/**
+	 * Test case for MappedRoomStore.
+	 * Preconditions: Bug injection is turned off for Room and Player.
+	 *                The world of Game, written to a world file and opened as a world.
+	 * Execution steps: Compare the rooms of both worlds, play the same script in both, and load sessions
+	 *                  saved in the original world into the mapped one. Try to write a graph world.
+	 * Postconditions: Both worlds have the same content hash and rooms with the same descriptions.
+	 *                 A Room of the original world is found in the mapped world by content.
+	 *                 The mapped world is frozen and both games give the same output.
+	 *                 Writing a graph world fails.
+	 */
+	@Test
+	public void testMappedRoomStore() throws Exception {
+		Config.setBuggyRoom(false);
+		Config.setBuggyPlayer(false);
+		World world = new World();
+		CoffeeMakerQuestImpl original = new CoffeeMakerQuestImpl(world);
+		Room first = Game.addRooms(original);
+		File file = File.createTempFile("world", ".cmqw");
+		try {
+			MappedRoomStore.write(file, world);
+			MappedRoomStore store = new MappedRoomStore(file);
+			World mapped = new World(store);
+			assertTrue(mapped.isFrozen());
+			assertEquals(world.size(), mapped.size());
+			assertEquals(world.contentHash(), mapped.contentHash());
+			for(int i = 0; i < world.size(); i++) {
+				assertEquals(world.get(i).getDescription(), mapped.get(i).getDescription());
+				assertArrayEquals(world.get(i).getDescriptionBytes(), mapped.get(i).getDescriptionBytes());
+				assertEquals(world.get(i).getItem(), mapped.get(i).getItem());
+				assertEquals(mapped.get(i), mapped.get(i));
+				assertEquals(i, mapped.indexOf(world.get(i)));
+			}
+			assertTrue(store.containsAdjective("SMALL"));
+			assertTrue(store.containsFurnishing("quaint SOFA"));
+			assertFalse(store.containsAdjective("Tiny"));
+			assertEquals(-1, mapped.indexOf(new Room("Quaint sofa", "Small", Item.SUGAR)));
+			
+			CoffeeMakerQuestImpl game = new CoffeeMakerQuestImpl(mapped);
+			game.setPlayer(new Player());
+			original.setPlayer(new Player());
+			assertTrue(game.setCurrentRoom(first));
+			assertTrue(original.setCurrentRoom(first));
+			assertFalse(game.addRoomAtNorth(new Room("Sofa", "Plain", Item.NONE), "Red", "Blue"));
+			StringBuilder expected = new StringBuilder();
+			StringBuilder actual = new StringBuilder();
+			original.processCommands("L N*2 L N*9 L I S", expected);
+			game.processCommands("L N*2 L N*9 L I S", actual);
+			assertEquals(expected.toString(), actual.toString());
+			assertEquals(original.getCurrentRoom().getDescription(), game.getCurrentRoom().getDescription());
+			
+			File snapshots = File.createTempFile("sessions", ".cmqs");
+			try {
+				SessionSnapshots.save(snapshots, world, Arrays.asList(original));
+				assertEquals(original.snapshot(), SessionSnapshots.load(snapshots, mapped).get(0).snapshot());
+			} finally {
+				snapshots.delete();
+			}
+			
+			world.addRoom(new Room("Barrel", "Cellar", Item.NONE));
+			try {
+				MappedRoomStore.write(file, world);
+				fail("Expected IllegalArgumentException");
+			} catch(IllegalArgumentException e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Test case for MappedRoomStore with long names.
+	 * Preconditions: Bug injection is turned off for Room.
+	 *                A world of two rooms whose furnishings and door labels are longer than 64 bytes
+	 *                in UTF-8, written to a world file and opened as a world.
+	 * Execution steps: Compare the rooms of both worlds and look up the second furnishing ignoring case.
+	 * Postconditions: The rooms have the same furnishings and descriptions, and the furnishing is found.
+	 */
+	@Test
+	public void testMappedRoomStoreLongNames() throws Exception {
+		Config.setBuggyRoom(false);
+		World world = new World();
+		CoffeeMakerQuestImpl game = new CoffeeMakerQuestImpl(world);
+		String longName = String.join(" ", Collections.nCopies(40, "caf\u00e9"));
+		assertTrue(game.addFirstRoom(new Room("Sofa " + longName, "Small", Item.NONE)));
+		assertTrue(game.addRoomAtNorth(new Room("Chair " + longName, "Funny", Item.COFFEE), "North " + longName, "South"));
+		File file = File.createTempFile("world", ".cmqw");
+		try {
+			MappedRoomStore.write(file, world);
+			MappedRoomStore store = new MappedRoomStore(file);
+			World mapped = new World(store);
+			for(int i = 0; i < world.size(); i++) {
+				assertEquals(world.get(i).getFurnishing(), mapped.get(i).getFurnishing());
+				assertEquals(world.get(i).getDescription(), mapped.get(i).getDescription());
+			}
+			assertTrue(store.containsFurnishing(("Chair " + longName).toUpperCase()));
+		} finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Test case for the description faults of MappedRoomStore rooms.
+	 * Preconditions: Bug injection is turned off for Room.
+	 *                The world of Game, written to a world file and opened as a world.
+	 * Execution steps: For each room, install a Room fault for this thread limited to getDescription
+	 *                  and call getDescriptionBytes(), then one limited to getDescriptionBytes and call
+	 *                  getDescription() and getDescriptionBytes().
+	 * Postconditions: Each fault fires only in the method it names.
+	 */
+	@Test
+	public void testMappedRoomStoreDescriptionFaults() throws Exception {
+		Config.setBuggyRoom(false);
+		World world = Game.createWorld();
+		File file = File.createTempFile("world", ".cmqw");
+		try {
+			MappedRoomStore.write(file, world);
+			World mapped = new World(new MappedRoomStore(file));
+			for(int i = 0; i < mapped.size(); i++) {
+				assertDescriptionFaultsApart(mapped.get(i));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	// Check that Room faults limited to getDescription or getDescriptionBytes fire only in that method of room
+	private static void assertDescriptionFaultsApart(Room room) {
+		String description = room.getDescription();
+		byte[] bytes = room.getDescriptionBytes();
+		try {
+			FaultInjector.setThreadRoomFault(new FaultInjector.Fault(1.0, 0, "getDescription"));
+			assertArrayEquals(bytes, room.getDescriptionBytes());
+			FaultInjector.setThreadRoomFault(new FaultInjector.Fault(1.0, 0, "getDescriptionBytes"));
+			assertEquals(description, room.getDescription());
+			try {
+				room.getDescriptionBytes();
+				fail("Expected injected bug");
+			} catch(UnsupportedOperationException e) {
+				assertEquals("Injected bug for Room class", e.getMessage());
+			}
+		} finally {
+			FaultInjector.clearThreadFaults();
+		}
+	}
+	
+	/**
+	 * Test case for processCommand(CharSequence, Appendable) and processCommand(CharSequence, ByteBuffer).
+	 * Preconditions: Bug injection is turned off for Room and Player.
+	 *                Three games in the world of Game: one answering with strings, one into an Appendable
+	 *                and one into a ByteBuffer.
+	 * Execution steps: Play the same commands, ending with "D", in each game.
+	 * Postconditions: The Appendable and the UTF-8 decoded ByteBuffer hold exactly the string responses.
+	 *                 Each response fits in MAX_RESPONSE_BYTES, and getInstructionsBytes() encodes the prompt.
+	 */
+	@Test
+	public void testProcessCommandRendering() throws Exception {
+		Config.setBuggyRoom(false);
+		Config.setBuggyPlayer(false);
+		World world = Game.createWorld();
+		CoffeeMakerQuestImpl[] games = new CoffeeMakerQuestImpl[3];
+		for(int i = 0; i < games.length; i++) {
+			games[i] = new CoffeeMakerQuestImpl(world);
+			games[i].setPlayer(new Player());
+			games[i].setCurrentRoom(world.get(0));
+		}
+		StringBuilder appended = new StringBuilder();
+		ByteBuffer buffer = ByteBuffer.allocate(CoffeeMakerQuestImpl.MAX_RESPONSE_BYTES);
+		for(String cmd : new String[] {"H", "L", "I", "S", "x", "E", "N", "N", "L", "n", "N", "N", "L", "N", "I", "D"}) {
+			String expected = games[0].processCommand(cmd);
+			appended.setLength(0);
+			games[1].processCommand(cmd, appended);
+			assertEquals(expected, appended.toString());
+			buffer.clear();
+			games[2].processCommand(cmd, buffer);
+			assertEquals(expected, new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8));
+		}
+		assertTrue(games[1].isGameOver() && games[2].isGameOver());
+		assertSame(games[0].getDrinkOutcome(), games[2].getDrinkOutcome());
+		assertArrayEquals(games[0].getInstructionsString().getBytes(StandardCharsets.UTF_8), games[2].getInstructionsBytes());
+	}
+	
+	/**
+	 * Test case for WorldCompiler.
+	 * Preconditions: Bug injection is turned off for Room and Player.
+	 *                The world of Game, written as a world definition.
+	 * Execution steps: Compile the definition into an image, load it and play the same script in both worlds.
+	 *                  Parse invalid definitions, and load the image after flipping one bit of it.
+	 * Postconditions: Both worlds have the same content hash, rooms and responses.
+	 *                 Each invalid definition is reported at the right line; the corrupt image is refused.
+	 */
+	@Test
+	public void testWorldCompiler() throws Exception {
+		Config.setBuggyRoom(false);
+		Config.setBuggyPlayer(false);
+		World world = Game.createWorld();
+		File definition = File.createTempFile("world", ".txt");
+		File image = File.createTempFile("world", ".img");
+		try {
+			WorldCompiler.decompile(world, definition);
+			WorldCompiler.compile(definition, image);
+			World loaded = WorldCompiler.load(image);
+			assertTrue(loaded.isFrozen());
+			assertEquals(world.size(), loaded.size());
+			assertEquals(world.contentHash(), loaded.contentHash());
+			for(int i = 0; i < world.size(); i++) {
+				assertEquals(world.get(i).getDescription(), loaded.get(i).getDescription());
+				assertEquals(world.get(i).getItem(), loaded.get(i).getItem());
+			}
+			CoffeeMakerQuestImpl original = new CoffeeMakerQuestImpl(world);
+			CoffeeMakerQuestImpl game = new CoffeeMakerQuestImpl(loaded);
+			original.setPlayer(new Player());
+			game.setPlayer(new Player());
+			assertTrue(original.setCurrentRoom(world.get(0)));
+			assertTrue(game.setCurrentRoom(world.get(0)));
+			StringBuilder expected = new StringBuilder();
+			StringBuilder actual = new StringBuilder();
+			original.processCommands("L N L N*2 L N*3 L I S*5 D", expected);
+			game.processCommands("L N L N*2 L N*3 L I S*5 D", actual);
+			assertEquals(expected.toString(), actual.toString());
+			
+			String[][] invalid = {
+					{"Small | Sofa | NONE | - | Red", "# comment", "", "small | Chair | NONE | Blue | -"}, {"4", "adjective small"},
+					{"Small | Sofa | NONE | - | Red", "Big | sofa | CREAM | Blue | -"}, {"2", "furnishing sofa"},
+					{"Small | Sofa | NONE | Red | Red", "Big | Chair | NONE | Blue | -"}, {"1", "first room"},
+					{"Small | Sofa | NONE | - | Red", "Big | Chair | NONE | - | -"}, {"2", "south door"},
+					{"Small | Sofa | NONE | - | -", "Big | Chair | NONE | Blue | -"}, {"1", "north door"},
+					{"Small | Sofa | NONE | - | Red", "Big | Chair | NONE | Blue | Green"}, {"2", "last room"},
+					{"Small | Sofa | TEA | - | -"}, {"1", "unknown item"},
+					{"Small | Sofa | NONE | -"}, {"1", "5 fields"},
+					{"Small |  | NONE | - | -"}, {"1", "field 2"},
+					{"# nothing"}, {null, "no rooms"}};
+			for(int i = 0; i < invalid.length; i += 2) {
+				try {
+					WorldCompiler.parse(Arrays.asList(invalid[i]), "test");
+					fail("Expected IOException");
+				} catch(IOException e) {
+					String prefix = invalid[i + 1][0] == null ? "test " : "test:" + invalid[i + 1][0] + ": ";
+					assertTrue(e.getMessage(), e.getMessage().startsWith(prefix));
+					assertTrue(e.getMessage(), e.getMessage().contains(invalid[i + 1][1]));
+				}
+			}
+			
+			byte[] bytes = Files.readAllBytes(image.toPath());
+			bytes[bytes.length - 1] ^= 1;
+			Files.write(image.toPath(), bytes);
+			try {
+				WorldCompiler.load(image);
+				fail("Expected IOException");
+			} catch(IOException e) {
+				// expected
+			}
+		} finally {
+			definition.delete();
+			image.delete();
+		}
+	}
+	
+	/**
+	 * Test case for LiveRoomStore, a stress test in the style of jcstress.
+	 * Preconditions: Bug injection is turned off for Room and Player.
+	 *                A live world with one room; a designer thread adds 20000 rooms at north.
+	 * Execution steps: Meanwhile 4 sessions go north until they reach the last room. Two look at their room
+	 *                  before each N, counting the outcomes (north door shown, move succeeded); two run "N*3".
+	 *                  All check the newest room.
+	 * Postconditions: No session went north from a room not showing a north door, nor failed to through one,
+	 *                 and no jump landed in a room whose door from the south was not labeled yet.
+	 *                 Every room a session saw, including the newest, was fully wired.
+	 *                 The win-path oracle is only available once the world is frozen.
+	 *                 The world has the content hash of the same world built in a RoomList; it cannot become a graph.
+	 */
+	@Test(timeout = 60000)
+	public void testLiveRoomStore() throws Exception {
+		Config.setBuggyRoom(false);
+		Config.setBuggyPlayer(false);
+		final int rooms = 20000;
+		final int sessions = 4;
+		World world = new World(new LiveRoomStore());
+		CoffeeMakerQuestImpl designer = new CoffeeMakerQuestImpl(world);
+		assertTrue(designer.addFirstRoom(new Room("Furnishing 0", "Adjective 0", Item.NONE)));
+		// outcomes[shown][moved] counts the tries to go north, shown being whether the
+		// description had a north door and moved whether the player got through
+		LongAdder[][] outcomes = new LongAdder[2][2];
+		for(LongAdder[] row : outcomes) {
+			for(int moved = 0; moved < 2; moved++) {
+				row[moved] = new LongAdder();
+			}
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(sessions + 1);
+		try {
+			List<Future<?>> done = new ArrayList<Future<?>>();
+			for(int s = 0; s < sessions; s++) {
+				boolean jumping = s % 2 == 1;
+				done.add(pool.submit(() -> {
+					CoffeeMakerQuestImpl game = new CoffeeMakerQuestImpl(world);
+					game.setPlayer(new Player());
+					assertTrue(game.setCurrentRoom(world.get(0)));
+					for(int at = 0; at < rooms - 1; ) {
+						if(jumping) {
+							// A jump never lands in a room whose door from the south is not labeled yet
+							game.processCommands("N*3", new StringBuilder());
+							at = world.indexOf(game.getCurrentRoom());
+							if(at > 0) {
+								assertNotNull(world.get(at - 1).getDoor(Direction.NORTH));
+							}
+							assertEquals(-1, game.commandsToWin());
+						}
+						else {
+							Room room = game.getCurrentRoom();
+							boolean shown = room.getDescription().contains(" door leads North.");
+							String response = game.processCommand("N");
+							boolean moved = game.getCurrentRoom() != room;
+							outcomes[shown ? 1 : 0][moved ? 1 : 0].increment();
+							if(moved) {
+								assertEquals("", response);
+								at++;
+								assertEquals(at, world.indexOf(game.getCurrentRoom()));
+								assertTrue(game.getCurrentRoom().getDescription().endsWith("A South " + at + " door leads South.\n"));
+							}
+						}
+						Room newest = world.get(world.size() - 1);
+						assertNotNull(newest);
+						if(newest != world.get(0)) {
+							assertNotNull(newest.getDoor(Direction.SOUTH));
+						}
+					}
+					return null;
+				}));
+			}
+			done.add(pool.submit(() -> {
+				for(int i = 1; i < rooms; i++) {
+					assertTrue(designer.addRoomAtNorth(new Room("Furnishing " + i, "Adjective " + i, Item.NONE),
+							"North " + i, "South " + i));
+				}
+				return null;
+			}));
+			for(Future<?> future : done) {
+				future.get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		assertEquals(0, outcomes[1][0].sum());
+		assertEquals(sessions / 2 * (rooms - 1L), outcomes[0][1].sum() + outcomes[1][1].sum());
+		assertNull(world.getWinPathOracle());
+		world.freeze();
+		assertNotNull(world.getWinPathOracle());
+		
+		World sequential = new World();
+		sequential.addFirstRoom(new Room("Furnishing 0", "Adjective 0", Item.NONE));
+		for(int i = 1; i < rooms; i++) {
+			sequential.addRoomAtNorth(new Room("Furnishing " + i, "Adjective " + i, Item.NONE), "North " + i, "South " + i);
+		}
+		assertEquals(sequential.contentHash(), world.contentHash());
+		assertEquals(rooms - 1, world.exit(rooms - 2, Direction.NORTH));
+		assertEquals(-1, world.exit(rooms - 1, Direction.NORTH));
+		assertEquals(-1, world.addRoom(new Room("Sofa", "Plain", Item.NONE)));
+		assertFalse(world.connect(0, Direction.EAST, 1, "Red"));
+		assertTrue(world.isChain());
+	}
+	
 	/**
 	 * Test case for private doorDoesNotExist().
 	 * Preconditions: none.
@@ -0,0 +1,62 @@
+import java.util.Arrays;
+
+enum Command {
+	NORTH(Direction.NORTH),
+	SOUTH(Direction.SOUTH),
+	LOOK(null),
+	INVENTORY(null),
+	DRINK(null),
+	HELP(null),
+	UNKNOWN(null),
+	// Only understood in graph worlds. Declared last so the ordinals of the others,
+	// which are stored in command journals, do not change.
+	EAST(Direction.EAST),
+	WEST(Direction.WEST);
+	
+	private final Direction direction;
+	
+	Command(Direction direction) {
+		this.direction = direction;
+	}
+	
+	// Return the direction this command moves in, or null if it is not a move
+	Direction getDirection() {
+		return direction;
+	}
+	
+	// Command for each ASCII character, in both cases
+	private static final Command[] BY_CHAR = new Command[128];
+	static {
+		Arrays.fill(BY_CHAR, UNKNOWN);
+		BY_CHAR['N'] = BY_CHAR['n'] = NORTH;
+		BY_CHAR['S'] = BY_CHAR['s'] = SOUTH;
+		BY_CHAR['L'] = BY_CHAR['l'] = LOOK;
+		BY_CHAR['I'] = BY_CHAR['i'] = INVENTORY;
+		BY_CHAR['D'] = BY_CHAR['d'] = DRINK;
+		BY_CHAR['H'] = BY_CHAR['h'] = HELP;
+		BY_CHAR['E'] = BY_CHAR['e'] = EAST;
+		BY_CHAR['W'] = BY_CHAR['w'] = WEST;
+	}
+	
+	// Classify a user command without allocating. Commands are a single letter in
+	// either case; anything else, including longer input, is UNKNOWN.
+	static Command of(CharSequence cmd) {
+		return of(cmd, 0, cmd.length());
+	}
+	
+	// Classify the command in cmd between start (inclusive) and end (exclusive)
+	static Command of(CharSequence cmd, int start, int end) {
+		if(end - start != 1) {
+			return UNKNOWN;
+		}
+		char c = cmd.charAt(start);
+		if(c >= BY_CHAR.length) {
+			// A few non-ASCII letters upper-case to a command letter (e.g. dotless i)
+			c = Character.toUpperCase(c);
+			if(c >= BY_CHAR.length) {
+				return UNKNOWN;
+			}
+		}
+		return BY_CHAR[c];
+	}
+}
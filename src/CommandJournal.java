@@ -0,0 +1,248 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+/**
+ * Append-only binary log of the commands processed by game sessions (see
+ * CoffeeMakerQuestImpl.setJournal), for replaying incidents with JournalReplayer.
+ * 
+ * Records are appended to an in-memory buffer; a background thread writes the
+ * buffer out and forces it to the device every few milliseconds, so many records
+ * share one fsync (group commit) and appending never waits for the disk. Use sync()
+ * to wait until everything appended so far is durable.
+ * 
+ * File layout (little-endian): magic "CMQJ", format version, flags, a reserved int
+ * and the wall-clock time the journal was created in epoch milliseconds, then the
+ * records. A record is the session id (long), the nanoseconds since the journal was
+ * created (long) and a one-byte code: a Command ordinal, SET_ROOM followed by the
+ * room index (int, -1 for a room not in the world) or RESTORE followed by a session
+ * snapshot (long). With RESPONSE_HASHES, command records end with the hash code of
+ * the response (int).
+ */
+class CommandJournal implements Closeable {
+	static final int MAGIC = 0x4a514d43;
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 24;
+	
+	// Header flag: command records carry the hash code of the response
+	static final int RESPONSE_HASHES = 1;
+	
+	// Record codes besides the Command ordinals
+	static final byte SET_ROOM = 64;
+	static final byte RESTORE = 65;
+	
+	// Largest record: session id, timestamp, code, snapshot
+	private static final int MAX_RECORD_BYTES = 8 + 8 + 1 + 8;
+	
+	private final FileChannel channel;
+	private final boolean responseHashes;
+	private final long startNanos;
+	private final long commitMillis;
+	private final Thread committer;
+	
+	// Records not yet handed to the committer; swapped with spare on every commit
+	private ByteBuffer active;
+	private ByteBuffer spare;
+	// Bytes of records appended so far, and how many of them are durable
+	private long appended = 0;
+	private long durable = 0;
+	private int recordStart;
+	private int syncWaiters = 0;
+	private boolean closed = false;
+	private IOException failure = null;
+	
+	/**
+	 * Create a journal, replacing the contents of file.
+	 * 
+	 * @param file           the journal file
+	 * @param responseHashes whether to record the hash code of each response, so replays can be verified
+	 * @param commitMillis   how long records may wait to be committed together
+	 * @throws IOException if the file cannot be written
+	 */
+	CommandJournal(File file, boolean responseHashes, long commitMillis) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		this.channel = raf.getChannel();
+		this.responseHashes = responseHashes;
+		this.commitMillis = commitMillis;
+		this.startNanos = System.nanoTime();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(responseHashes ? RESPONSE_HASHES : 0).putInt(0);
+		header.putLong(System.currentTimeMillis());
+		header.flip();
+		while(header.hasRemaining()) {
+			channel.write(header);
+		}
+		active = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		spare = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		committer = new Thread(this::commitLoop, "command-journal");
+		committer.setDaemon(true);
+		committer.start();
+	}
+	
+	/**
+	 * Record a processed command.
+	 * 
+	 * @param sessionId the session that processed it
+	 * @param command   the command
+	 * @param response  the response returned for it
+	 */
+	void append(long sessionId, Command command, String response) {
+		synchronized(this) {
+			ByteBuffer buf = begin(sessionId, (byte) command.ordinal());
+			if(responseHashes) {
+				buf.putInt(response.hashCode());
+			}
+			end(buf);
+		}
+	}
+	
+	/**
+	 * Record a call to setCurrentRoom.
+	 * 
+	 * @param sessionId the session
+	 * @param index     index of the room in the world, or -1 if it is not in the world
+	 */
+	void appendSetRoom(long sessionId, int index) {
+		synchronized(this) {
+			end(begin(sessionId, SET_ROOM).putInt(index));
+		}
+	}
+	
+	/**
+	 * Record that a session was restored from a snapshot.
+	 * 
+	 * @param sessionId the session
+	 * @param state     the snapshot it was restored from
+	 */
+	void appendRestore(long sessionId, long state) {
+		synchronized(this) {
+			end(begin(sessionId, RESTORE).putLong(state));
+		}
+	}
+	
+	// Start a record in the active buffer, growing it if the committer is behind
+	private ByteBuffer begin(long sessionId, byte code) {
+		if(closed) {
+			throw new IllegalStateException("Journal is closed");
+		}
+		if(failure != null) {
+			throw new UncheckedIOException(failure);
+		}
+		if(active.remaining() < MAX_RECORD_BYTES + 4) {
+			ByteBuffer bigger = ByteBuffer.allocate(active.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+			active.flip();
+			bigger.put(active);
+			active = bigger;
+		}
+		if(active.position() == 0) {
+			// Wake the committer to start a new group
+			notifyAll();
+		}
+		recordStart = active.position();
+		return active.putLong(sessionId).putLong(System.nanoTime() - startNanos).put(code);
+	}
+	
+	// Finish the record started by begin
+	private void end(ByteBuffer buf) {
+		appended += buf.position() - recordStart;
+		int half = buf.capacity() / 2;
+		if(recordStart < half && buf.position() >= half) {
+			// Commit early rather than grow the buffer
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * Wait until every record appended so far has been forced to the device.
+	 * 
+	 * @throws IOException if the journal could not be written
+	 */
+	synchronized void sync() throws IOException {
+		long target = appended;
+		syncWaiters++;
+		try {
+			notifyAll();
+			while(durable < target && failure == null) {
+				try {
+					wait();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+		} finally {
+			syncWaiters--;
+		}
+		if(failure != null) {
+			throw failure;
+		}
+	}
+	
+	/**
+	 * Commit the remaining records and close the file.
+	 * 
+	 * @throws IOException if the journal could not be written
+	 */
+	public void close() throws IOException {
+		synchronized(this) {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			notifyAll();
+		}
+		try {
+			committer.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if(failure != null) {
+			throw failure;
+		}
+	}
+	
+	// Body of the committer thread: gather records for up to commitMillis, then write and force them
+	private void commitLoop() {
+		try {
+			while(true) {
+				ByteBuffer batch;
+				long end;
+				synchronized(this) {
+					while(active.position() == 0 && !closed) {
+						wait();
+					}
+					if(active.position() == 0) {
+						return;
+					}
+					if(!closed && syncWaiters == 0 && active.position() < active.capacity() / 2) {
+						wait(commitMillis);
+					}
+					batch = active;
+					active = spare;
+					spare = null;
+					end = appended;
+				}
+				batch.flip();
+				while(batch.hasRemaining()) {
+					channel.write(batch);
+				}
+				channel.force(false);
+				batch.clear();
+				synchronized(this) {
+					spare = batch;
+					durable = end;
+					notifyAll();
+				}
+			}
+		} catch(IOException e) {
+			synchronized(this) {
+				failure = e;
+				notifyAll();
+			}
+		} catch(InterruptedException e) {
+			// Not interrupted by anything but the JVM shutting down
+		}
+	}
+}
@@ -6,22 +6,74 @@ public class Config {
 	// Whether to intentionally inject bugs into Room.
 	private static boolean buggyRoom = false;
 	
+	// Whether the setters only affect the calling thread, so tests can run in parallel.
+	private static volatile boolean threadScoped = false;
+	// Per-thread values of the flags above, used while threadScoped; null means unset.
+	private static final ThreadLocal<Boolean> threadBuggyCoffeeMakerQuest = new ThreadLocal<Boolean>();
+	private static final ThreadLocal<Boolean> threadBuggyPlayer = new ThreadLocal<Boolean>();
+	private static final ThreadLocal<Boolean> threadBuggyRoom = new ThreadLocal<Boolean>();
+	
+	// When val is true, later calls to the setters only apply to the calling thread;
+	// threads that have not set a flag themselves see the process-wide value.
+	public static void setThreadScoped(boolean val) {
+		threadScoped = val;
+	}
+	public static boolean getThreadScoped() {
+		return threadScoped;
+	}
+	// Forgets the calling thread's own values, so it sees the process-wide ones again.
+	public static void clearThreadValues() {
+		threadBuggyCoffeeMakerQuest.remove();
+		threadBuggyPlayer.remove();
+		threadBuggyRoom.remove();
+		FaultInjector.clearThreadFaults();
+	}
+	
 	public static void setBuggyCoffeeMakerQuest(boolean val) {
+		if(threadScoped) {
+			threadBuggyCoffeeMakerQuest.set(val);
+			return;
+		}
 		buggyCoffeeMakerQuest = val;
 	}
+	// Player and Room check for injected bugs through FaultInjector, which costs nothing while disabled.
 	public static void setBuggyPlayer(boolean val) {
+		FaultInjector.Fault fault = val ? FaultInjector.Fault.ALWAYS : null;
+		if(threadScoped) {
+			threadBuggyPlayer.set(val);
+			FaultInjector.setThreadPlayerFault(fault);
+			return;
+		}
 		buggyPlayer = val;
+		FaultInjector.setPlayerFault(fault);
 	}
 	public static void setBuggyRoom(boolean val) {
+		FaultInjector.Fault fault = val ? FaultInjector.Fault.ALWAYS : null;
+		if(threadScoped) {
+			threadBuggyRoom.set(val);
+			FaultInjector.setThreadRoomFault(fault);
+			return;
+		}
 		buggyRoom = val;
+		FaultInjector.setRoomFault(fault);
 	}
 	public static boolean getBuggyCoffeeMakerQuest() {
-		return buggyCoffeeMakerQuest;
+		return get(threadBuggyCoffeeMakerQuest, buggyCoffeeMakerQuest);
 	}
 	public static boolean getBuggyPlayer() {
-		return buggyPlayer;
+		return get(threadBuggyPlayer, buggyPlayer);
 	}
 	public static boolean getBuggyRoom() {
-		return buggyRoom;
+		return get(threadBuggyRoom, buggyRoom);
+	}
+	
+	private static boolean get(ThreadLocal<Boolean> threadValue, boolean value) {
+		if(threadScoped) {
+			Boolean local = threadValue.get();
+			if(local != null) {
+				return local;
+			}
+		}
+		return value;
 	}
 }
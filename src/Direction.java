@@ -0,0 +1,7 @@
+// Directions a door can lead in. A room has at most one exit in each direction.
+enum Direction {
+	NORTH,
+	SOUTH,
+	EAST,
+	WEST
+}
@@ -0,0 +1,96 @@
+/**
+ * The result of drinking: whether the player won, why, and the message shown after
+ * the inventory. The outcome depends only on the inventory, so there is one shared
+ * instance per inventory mask (see Player.inventoryMask()).
+ */
+class DrinkOutcome {
+	
+	// Why the player won or lost
+	enum Reason {
+		WIN,
+		NO_CREAM,
+		NO_SUGAR,
+		NO_COFFEE_CREAM,
+		NO_COFFEE_SWEETENED_CREAM,
+		NO_COFFEE_SUGAR,
+		NOTHING
+	}
+	
+	private static final DrinkOutcome[] OUTCOMES = new DrinkOutcome[8];
+	static {
+		for(int mask = 0; mask < OUTCOMES.length; mask++) {
+			OUTCOMES[mask] = resolve(mask);
+		}
+	}
+	
+	private final int mask;
+	private final boolean win;
+	private final Reason reason;
+	private final String message;
+	
+	private DrinkOutcome(int mask, boolean win, Reason reason, String message) {
+		this.mask = mask;
+		this.win = win;
+		this.reason = reason;
+		this.message = message;
+	}
+	
+	/**
+	 * Returns the outcome of drinking with the given inventory.
+	 * 
+	 * @param mask inventory mask made of Player.COFFEE, Player.CREAM and Player.SUGAR
+	 * @return the outcome
+	 */
+	static DrinkOutcome forInventory(int mask) {
+		return OUTCOMES[mask];
+	}
+	
+	// Return the inventory mask the drink was made from
+	public int getMask() {
+		return mask;
+	}
+	
+	public boolean isWin() {
+		return win;
+	}
+	
+	public Reason getReason() {
+		return reason;
+	}
+	
+	// Return the message printed after the inventory string
+	public String getMessage() {
+		return message;
+	}
+	
+	private static DrinkOutcome resolve(int mask) {
+		boolean coffee = (mask & Player.COFFEE) != 0;
+		boolean cream = (mask & Player.CREAM) != 0;
+		boolean sugar = (mask & Player.SUGAR) != 0;
+		// win condition
+		if (coffee && cream && sugar) {
+			return new DrinkOutcome(mask, true, Reason.WIN, "\nYou drink the beverage and are ready to study!\nYou win!\n");
+		}
+		// all lose condition outputs
+		if(coffee) {
+			if(!cream) {
+				return lose(mask, Reason.NO_CREAM, "\nWithout cream, you get an ulcer and cannot study.");
+			}
+			return lose(mask, Reason.NO_SUGAR, "\nWithout sugar, the coffee is too bitter. You cannot study.");
+		}
+		if(cream) {
+			if(!sugar) {
+				return lose(mask, Reason.NO_COFFEE_CREAM, "\nYou drink the cream, but without caffeine, you cannot study.");
+			}
+			return lose(mask, Reason.NO_COFFEE_SWEETENED_CREAM, "\nYou drink the sweetened cream, but without caffeine you cannot study.");
+		}
+		if(sugar) {
+			return lose(mask, Reason.NO_COFFEE_SUGAR, "\nYou eat the sugar, but without caffeine, you cannot study.");
+		}
+		return lose(mask, Reason.NOTHING, "\nYou drink the air, as you have no coffee, sugar, or cream.\nThe air is invigorating, but not invigorating enough. You cannot study.");
+	}
+	
+	private static DrinkOutcome lose(int mask, Reason reason, String message) {
+		return new DrinkOutcome(mask, false, reason, message + "\nYou lose!\n");
+	}
+}
@@ -0,0 +1,201 @@
+import java.lang.invoke.*;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fault injection for Room and Player. Every Room and Player method starts with
+ * 
+ *     if (FaultInjector.roomArmed()) {
+ *         FaultInjector.injectRoom("methodName");
+ *     }
+ * 
+ * roomArmed() reads a constant through a MutableCallSite, so while no fault is
+ * installed the JIT folds the check away entirely. Installing or clearing a fault
+ * changes the call site target, which deoptimizes the code that inlined it.
+ * 
+ * A fault is installed either for the whole process or for the calling thread only;
+ * a thread's own setting, even null, takes precedence over the process-wide one.
+ * A thread that ends without clearing its fault stops arming the call site at the
+ * next change of faults.
+ * Config.setBuggyRoom/setBuggyPlayer install Fault.ALWAYS, the fault the unit tests
+ * rely on. Richer faults can be installed with setRoomFault/setPlayerFault.
+ */
+class FaultInjector {
+	
+	/**
+	 * What to do when an armed method is called: wait latencyNanos, then throw
+	 * UnsupportedOperationException with the given probability. A fault can be limited
+	 * to some methods by name; with no names it applies to every method.
+	 */
+	static class Fault {
+		// Always throw, from every method
+		static final Fault ALWAYS = new Fault(1.0, 0);
+		
+		final double failureProbability;
+		final long latencyNanos;
+		private final Set<String> methods;
+		
+		Fault(double failureProbability, long latencyNanos, String... methods) {
+			this.failureProbability = failureProbability;
+			this.latencyNanos = latencyNanos;
+			this.methods = methods.length == 0 ? null : new HashSet<String>(Arrays.asList(methods));
+		}
+		
+		boolean appliesTo(String method) {
+			return methods == null || methods.contains(method);
+		}
+	}
+	
+	/**
+	 * The faults installed for one class (Room or Player) and the call site guarding it.
+	 */
+	private static class Target {
+		// Thread-local value of a thread that has not chosen a fault of its own
+		private static final Fault INHERIT = new Fault(0.0, 0);
+		
+		final MutableCallSite site = new MutableCallSite(DISARMED);
+		final String message;
+		private volatile Fault fault = null;
+		private final ThreadLocal<Fault> threadFault = ThreadLocal.withInitial(() -> INHERIT);
+		// Threads with a non-null fault of their own; threads that died without clearing
+		// theirs are dropped whenever the call site is rearmed. Guarded by this.
+		private final Set<Thread> armedThreads = new HashSet<Thread>();
+		
+		Target(String message) {
+			this.message = message;
+		}
+		
+		// The fault that applies to the calling thread
+		Fault current() {
+			Fault local = threadFault.get();
+			return local == INHERIT ? fault : local;
+		}
+		
+		synchronized void setFault(Fault f) {
+			fault = f;
+			rearm();
+		}
+		
+		void setThreadFault(Fault f) {
+			threadFault.set(f);
+			synchronized(this) {
+				if(f != null) {
+					armedThreads.add(Thread.currentThread());
+				} else {
+					armedThreads.remove(Thread.currentThread());
+				}
+				rearm();
+			}
+		}
+		
+		void clearThreadFault() {
+			setThreadFault(null);
+			threadFault.remove();
+		}
+		
+		synchronized boolean armedBy(Thread thread) {
+			return armedThreads.contains(thread);
+		}
+		
+		private void rearm() {
+			armedThreads.removeIf(thread -> !thread.isAlive());
+			MethodHandle target = fault != null || !armedThreads.isEmpty() ? ARMED : DISARMED;
+			if(site.getTarget() != target) {
+				site.setTarget(target);
+				MutableCallSite.syncAll(new MutableCallSite[] {site});
+			}
+		}
+	}
+	
+	private static final MethodHandle DISARMED = MethodHandles.constant(boolean.class, false);
+	private static final MethodHandle ARMED = MethodHandles.constant(boolean.class, true);
+	
+	private static final Target ROOM = new Target("Injected bug for Room class");
+	private static final Target PLAYER = new Target("Injected bug for Player class");
+	private static final MethodHandle ROOM_ARMED = ROOM.site.dynamicInvoker();
+	private static final MethodHandle PLAYER_ARMED = PLAYER.site.dynamicInvoker();
+	
+	// Whether a fault may be installed for Room
+	static boolean roomArmed() {
+		try {
+			return (boolean) ROOM_ARMED.invokeExact();
+		} catch(Throwable t) {
+			throw new AssertionError(t);
+		}
+	}
+	
+	// Whether a fault may be installed for Player
+	static boolean playerArmed() {
+		try {
+			return (boolean) PLAYER_ARMED.invokeExact();
+		} catch(Throwable t) {
+			throw new AssertionError(t);
+		}
+	}
+	
+	// Apply the Room fault, if any, to a call of the named Room method
+	static void injectRoom(String method) {
+		inject(ROOM, method);
+	}
+	
+	// Apply the Player fault, if any, to a call of the named Player method
+	static void injectPlayer(String method) {
+		inject(PLAYER, method);
+	}
+	
+	// Install fault for Room in every thread, or remove it with null
+	static void setRoomFault(Fault fault) {
+		ROOM.setFault(fault);
+	}
+	
+	// Install fault for Player in every thread, or remove it with null
+	static void setPlayerFault(Fault fault) {
+		PLAYER.setFault(fault);
+	}
+	
+	// Install fault for Room in the calling thread only; null disables Room faults in this thread
+	static void setThreadRoomFault(Fault fault) {
+		ROOM.setThreadFault(fault);
+	}
+	
+	// Install fault for Player in the calling thread only; null disables Player faults in this thread
+	static void setThreadPlayerFault(Fault fault) {
+		PLAYER.setThreadFault(fault);
+	}
+	
+	// Make the calling thread follow the process-wide faults again
+	static void clearThreadFaults() {
+		ROOM.clearThreadFault();
+		PLAYER.clearThreadFault();
+	}
+	
+	// Whether thread keeps the Room call site armed with a fault of its own
+	static boolean roomArmedBy(Thread thread) {
+		return ROOM.armedBy(thread);
+	}
+	
+	// The Room fault that applies to the calling thread
+	static Fault getRoomFault() {
+		return ROOM.current();
+	}
+	
+	// The Player fault that applies to the calling thread
+	static Fault getPlayerFault() {
+		return PLAYER.current();
+	}
+	
+	private static void inject(Target target, String method) {
+		// The call site is armed if any thread has a fault; this one may not
+		Fault fault = target.current();
+		if(fault == null || !fault.appliesTo(method)) {
+			return;
+		}
+		if(fault.latencyNanos > 0) {
+			LockSupport.parkNanos(fault.latencyNanos);
+		}
+		if(fault.failureProbability >= 1.0 || ThreadLocalRandom.current().nextDouble() < fault.failureProbability) {
+			throw new UnsupportedOperationException(target.message);
+		}
+	}
+}
@@ -1,10 +1,43 @@
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Scanner;
 
 public class Game {
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
+		if(args.length > 0 && args[0].equals("--server")) {
+			GameServer.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if(args.length >= 3 && args[0].equals("--pipe")) {
+			int flushEvery = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+			pipe(new File(args[1]), new File(args[2]), flushEvery);
+			return;
+		}
+		
 		CoffeeMakerQuest cmq = CoffeeMakerQuest.createInstance();
+		Room room1 = addRooms(cmq);
+					
+		System.out.println("Coffee Maker Quest 1.0\n");
+		cmq.setPlayer(new Player());
+		cmq.setCurrentRoom(room1);
+		
+		Scanner scanner = new Scanner(System.in);
 		
-		// Create the rooms with their appropriate items
+		// Main game loop
+		while(cmq.isGameOver() == false) {
+			System.out.println(cmq.getCurrentRoom().getDescription());
+			System.out.println(cmq.getInstructionsString());
+			
+			String cmd = scanner.nextLine();
+			String response = cmq.processCommand(cmd);
+			System.out.println(response);
+		}
+		scanner.close();
+	}
+	
+	// Create the rooms with their appropriate items and add them to cmq. Returns the first room.
+	static Room addRooms(CoffeeMakerQuest cmq) {
 		Room room1 = new Room("Quaint sofa", "Small", Item.CREAM);
 		Room room2 = new Room("Sad record player", "Funny", Item.NONE);
 		Room room3 = new Room("Tight pizza", "Refinanced", Item.COFFEE);
@@ -18,22 +51,74 @@ public class Game {
 		cmq.addRoomAtNorth(room4, "Dead", "Slim");
 		cmq.addRoomAtNorth(room5, "Vivacious", "Sandy");
 		cmq.addRoomAtNorth(room6, "Purple", "Minimalist");
-					
-		System.out.println("Coffee Maker Quest 1.0\n");
+		return room1;
+	}
+	
+	// Create a frozen World holding the rooms of the game, for sharing between sessions
+	static World createWorld() {
+		World world = new World();
+		addRooms(new CoffeeMakerQuestImpl(world));
+		world.freeze();
+		return world;
+	}
+	
+	/**
+	 * Play a game non-interactively, reading commands from the file in and writing
+	 * the game output to the file out. The output is byte-identical to what main
+	 * prints for the same input; it is buffered and only flushed every flushEvery
+	 * commands (0 for only at the end of input).
+	 * 
+	 * @param in         file with one command per line
+	 * @param out        file the output is written to
+	 * @param flushEvery number of commands between flushes, or 0
+	 * @throws IOException if reading or writing fails
+	 */
+	static void pipe(File in, File out, int flushEvery) throws IOException {
+		CoffeeMakerQuest cmq = CoffeeMakerQuest.createInstance();
+		Room room1 = addRooms(cmq);
 		cmq.setPlayer(new Player());
 		cmq.setCurrentRoom(room1);
 		
-		Scanner scanner = new Scanner(System.in);
-		
-		// Main game loop
+		// Use the same charset as System.out and Scanner in interactive mode
+		Charset charset = Charset.defaultCharset();
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(in), charset), 1 << 20);
+				Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out), charset), 1 << 20)) {
+			play(cmq, reader, writer, flushEvery);
+		}
+	}
+	
+	/**
+	 * Play a game, reading the commands from in and writing exactly what main prints
+	 * to out (starting with the banner), until the game is over or the input ends.
+	 * 
+	 * @param cmq        the game, with its player and current room already set
+	 * @param in         the commands, one per line
+	 * @param out        where the game output is written
+	 * @param flushEvery flush out before reading every flushEvery-th command (1 for an
+	 *                   interactive client), or 0 to flush only at the end
+	 * @throws IOException if reading or writing fails
+	 */
+	static void play(CoffeeMakerQuest cmq, BufferedReader in, Writer out, int flushEvery) throws IOException {
+		String newLine = System.lineSeparator();
+		int commands = 0;
+		out.write("Coffee Maker Quest 1.0\n");
+		out.write(newLine);
 		while(cmq.isGameOver() == false) {
-			System.out.println(cmq.getCurrentRoom().getDescription());
-			System.out.println(cmq.getInstructionsString());
+			out.write(cmq.getCurrentRoom().getDescription());
+			out.write(newLine);
+			out.write(cmq.getInstructionsString());
+			out.write(newLine);
+			if(flushEvery > 0 && commands++ % flushEvery == 0) {
+				out.flush();
+			}
 			
-			String cmd = scanner.nextLine();
-			String response = cmq.processCommand(cmd);
-			System.out.println(response);
+			String cmd = in.readLine();
+			if(cmd == null) {
+				break;
+			}
+			cmq.processCommand(cmd, out);
+			out.write(newLine);
 		}
-		scanner.close();
+		out.flush();
 	}
 }
@@ -0,0 +1,143 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Load generator for GameServer. Plays many sessions against a local server, each
+ * sending the same commands, and reports sessions per second and command latency
+ * percentiles. The latency of a command is the time from sending it until the next
+ * prompt (or the end of the session) has been received.
+ * 
+ * Usage: java GameLoadClient [port] [sessions] [concurrency] [commands...]
+ */
+class GameLoadClient {
+	// Commands that win the game in the world built by Game.addRooms
+	static final String[] WINNING_COMMANDS = {"L", "N", "N", "L", "N", "N", "N", "L", "D"};
+	// A session fails if the server sends nothing for this long
+	static final int READ_TIMEOUT_MILLIS = 10000;
+	
+	/**
+	 * The result of a load run.
+	 */
+	static class Report {
+		final int sessions;
+		final int wins;
+		final long elapsedNanos;
+		// Sorted command latencies in nanoseconds
+		final long[] latencies;
+		
+		Report(int sessions, int wins, long elapsedNanos, long[] latencies) {
+			this.sessions = sessions;
+			this.wins = wins;
+			this.elapsedNanos = elapsedNanos;
+			this.latencies = latencies;
+		}
+		
+		double sessionsPerSecond() {
+			return sessions * 1e9 / elapsedNanos;
+		}
+		
+		// Return the latency at the given percentile (0-100) in nanoseconds
+		long percentile(double p) {
+			if(latencies.length == 0) {
+				return 0;
+			}
+			int index = (int) Math.ceil(p / 100 * latencies.length) - 1;
+			return latencies[Math.max(0, Math.min(index, latencies.length - 1))];
+		}
+		
+		public String toString() {
+			return String.format("%d sessions (%d won) in %.1f ms: %.0f sessions/sec, %d commands, p50 %.1f us, p99 %.1f us, max %.1f us",
+					sessions, wins, elapsedNanos / 1e6, sessionsPerSecond(), latencies.length,
+					percentile(50) / 1e3, percentile(99) / 1e3, percentile(100) / 1e3);
+		}
+	}
+	
+	/**
+	 * Play sessions games against the server, at most concurrency at a time.
+	 * 
+	 * @param port        the server port on the loopback interface
+	 * @param sessions    number of sessions to play
+	 * @param concurrency number of sessions played at the same time
+	 * @param commands    the commands sent in every session
+	 * @return the report
+	 * @throws Exception if a session fails
+	 */
+	static Report run(int port, int sessions, int concurrency, String[] commands) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+		long[] all = new long[sessions * commands.length];
+		int count = 0;
+		int wins = 0;
+		long elapsed;
+		try {
+			List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+			long start = System.nanoTime();
+			for(int i = 0; i < sessions; i++) {
+				results.add(pool.submit(() -> playSession(port, commands)));
+			}
+			for(Future<long[]> result : results) {
+				long[] latencies = result.get();
+				// The last element flags a won session
+				wins += (int) latencies[latencies.length - 1];
+				System.arraycopy(latencies, 0, all, count, latencies.length - 1);
+				count += latencies.length - 1;
+			}
+			elapsed = System.nanoTime() - start;
+		} finally {
+			// Sessions still running after a failure are interrupted
+			pool.shutdownNow();
+		}
+		long[] latencies = Arrays.copyOf(all, count);
+		Arrays.sort(latencies);
+		return new Report(sessions, wins, elapsed, latencies);
+	}
+	
+	// Play one session. Returns the latency of each command sent, followed by 1 if the game was won.
+	private static long[] playSession(int port, String[] commands) throws IOException {
+		long[] latencies = new long[commands.length + 1];
+		int sent = 0;
+		try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+			boolean open = readUntilPrompt(in, null);
+			boolean[] won = new boolean[1];
+			while(open && sent < commands.length) {
+				long start = System.nanoTime();
+				out.write(commands[sent]);
+				out.write('\n');
+				out.flush();
+				open = readUntilPrompt(in, won);
+				latencies[sent++] = System.nanoTime() - start;
+			}
+			latencies[sent] = won[0] ? 1 : 0;
+		}
+		return Arrays.copyOf(latencies, sent + 1);
+	}
+	
+	// Read lines until the prompt of a GameServer session (a CoffeeMakerQuestImpl in a chain
+	// or graph world). Returns false if the session ended first.
+	private static boolean readUntilPrompt(BufferedReader in, boolean[] won) throws IOException {
+		String line;
+		while((line = in.readLine()) != null) {
+			if(line.equals(CoffeeMakerQuestImpl.CHAIN_INSTRUCTIONS) || line.equals(CoffeeMakerQuestImpl.GRAPH_INSTRUCTIONS)) {
+				return true;
+			}
+			if(won != null && line.equals("You win!")) {
+				won[0] = true;
+			}
+		}
+		return false;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : GameServer.DEFAULT_PORT;
+		int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		String[] commands = args.length > 3 ? Arrays.copyOfRange(args, 3, args.length) : WINNING_COMMANDS;
+		System.out.println(run(port, sessions, concurrency, commands));
+	}
+}
@@ -0,0 +1,127 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+import javax.management.JMException;
+
+/**
+ * Hosts concurrent game sessions over a local TCP socket. All sessions play in one
+ * shared, frozen World; each connection gets its own CoffeeMakerQuestImpl session
+ * (player, location, game-over state) and sees exactly what Game.main prints.
+ * The session ends when the game is over or the client closes its side.
+ * 
+ * Each session runs on its own thread from a cached pool.
+ * 
+ * Usage: java GameServer [port [world image]]; without an image the server plays the
+ * world of Game.
+ */
+class GameServer implements Closeable {
+	static final int DEFAULT_PORT = 16320;
+	
+	private final World world;
+	private final ServerSocket serverSocket;
+	private final ExecutorService sessions;
+	// Metrics of every session, if any
+	private volatile QuestMetrics metrics = null;
+	
+	/**
+	 * Listen on the loopback interface.
+	 * 
+	 * @param world the frozen world every session plays in
+	 * @param port  the port, or 0 for any free port
+	 * @throws IOException if the port cannot be bound
+	 */
+	GameServer(World world, int port) throws IOException {
+		this.world = world;
+		this.serverSocket = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress());
+		this.sessions = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "game-session");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	int getPort() {
+		return serverSocket.getLocalPort();
+	}
+	
+	/**
+	 * Record the commands of the sessions started from now on in metrics.
+	 * 
+	 * @param metrics the metrics, or null for none
+	 */
+	void setMetrics(QuestMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Accept connections until the server is closed.
+	 */
+	void serve() {
+		while(!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				sessions.execute(() -> runSession(socket));
+			} catch(IOException e) {
+				// Closed while waiting for a connection
+			} catch(RejectedExecutionException e) {
+				// Closed while handing over a connection
+			}
+		}
+	}
+	
+	/**
+	 * Stop accepting connections and end the running sessions.
+	 */
+	public void close() throws IOException {
+		serverSocket.close();
+		sessions.shutdownNow();
+	}
+	
+	private void runSession(Socket socket) {
+		try(Socket s = socket) {
+			s.setTcpNoDelay(true);
+			BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+			Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+			CoffeeMakerQuestImpl cmq = new CoffeeMakerQuestImpl(world);
+			cmq.setPlayer(new Player());
+			cmq.setCurrentRoom(world.get(0));
+			cmq.setMetrics(metrics);
+			try {
+				Game.play(cmq, in, out, 1);
+			} finally {
+				// Publish the counts of a session that ended without drinking
+				cmq.setMetrics(null);
+			}
+		} catch(IOException e) {
+			// The client went away; nothing to clean up beyond the socket
+		}
+	}
+	
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		// Metrics are available over JMX and printed every minute
+		QuestMetrics metrics = new QuestMetrics();
+		try {
+			metrics.register("server");
+		} catch(JMException e) {
+			System.err.println("Metrics are not available over JMX: " + e);
+		}
+		metrics.startDump(System.out, 60000);
+		World world;
+		if(args.length > 1) {
+			// A world image compiled by WorldCompiler is already validated and frozen
+			world = WorldCompiler.load(new File(args[1]));
+		} else {
+			world = new World();
+			CoffeeMakerQuestImpl builder = new CoffeeMakerQuestImpl(world);
+			builder.setMetrics(metrics);
+			Game.addRooms(builder);
+			world.freeze();
+		}
+		GameServer server = new GameServer(world, port);
+		server.setMetrics(metrics);
+		System.out.println("Coffee Maker Quest server listening on port " + server.getPort());
+		server.serve();
+	}
+}
@@ -0,0 +1,272 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Rebuilds the state of game sessions from a CommandJournal. Sessions are tracked as
+ * the longs of CoffeeMakerQuestImpl.snapshot() and commands are applied to them
+ * directly, without building any response, so a replay runs through millions of
+ * commands per second. verify() replays through real sessions instead and checks
+ * every response against the hash recorded in the journal.
+ * 
+ * A record cut short at the end of the journal, as left by a crash during a write,
+ * ends the replay.
+ */
+class JournalReplayer {
+	private static final Command[] COMMANDS = Command.values();
+	private static final long INVENTORY_BITS = 7L << CoffeeMakerQuestImpl.SNAPSHOT_INVENTORY_SHIFT;
+	private static final long DRUNK_BITS = 7L << CoffeeMakerQuestImpl.SNAPSHOT_DRUNK_SHIFT;
+	// Bytes that guarantee a whole record is buffered: session id, timestamp, code, operand and response hash
+	private static final int MAX_RECORD_BYTES = 8 + 8 + 1 + 8 + 4;
+	
+	private final World world;
+	// Player inventory bit of the item in each room
+	private final byte[] itemMasks;
+	
+	// Open-addressing map from session id to state; an empty slot has state -1
+	private long[] ids = new long[1024];
+	private long[] states = new long[1024];
+	private int sessionCount = 0;
+	
+	/**
+	 * Create a replayer for journals of sessions played in world.
+	 * 
+	 * @param world the world the sessions were played in
+	 */
+	JournalReplayer(World world) {
+		this.world = world;
+		itemMasks = world.itemMasks();
+		Arrays.fill(states, -1);
+	}
+	
+	/**
+	 * Apply every record of the journal to the sessions.
+	 * 
+	 * @param file the journal
+	 * @return the number of records replayed
+	 * @throws IOException if the file cannot be read or is not a journal
+	 */
+	long replay(File file) throws IOException {
+		return run(file, null);
+	}
+	
+	/**
+	 * Replay the journal through real sessions, comparing the hash code of every response
+	 * with the recorded one and every session state with the fast replay. The journal must
+	 * have been written with response hashes.
+	 * 
+	 * @param file the journal
+	 * @return the number of records that did not match
+	 * @throws IOException if the file cannot be read, is not a journal or has no response hashes
+	 */
+	long verify(File file) throws IOException {
+		long[] mismatches = new long[1];
+		Map<Long, CoffeeMakerQuestImpl> sessions = new HashMap<Long, CoffeeMakerQuestImpl>();
+		run(file, (id, code, responseHash, state) -> {
+			CoffeeMakerQuestImpl session = sessions.computeIfAbsent(id, key -> newSession());
+			if(code < COMMANDS.length) {
+				if(session.execute(COMMANDS[code]).hashCode() != responseHash) {
+					mismatches[0]++;
+				}
+				else if(session.snapshot() != state) {
+					mismatches[0]++;
+				}
+			}
+			else {
+				session.restore(state);
+			}
+		});
+		return mismatches[0];
+	}
+	
+	/**
+	 * Returns the state of a session after the replays so far.
+	 * 
+	 * @param sessionId the session
+	 * @return the state in the form of CoffeeMakerQuestImpl.snapshot(), or -1 if the session has no records
+	 */
+	long getState(long sessionId) {
+		int slot = find(sessionId);
+		return states[slot];
+	}
+	
+	/**
+	 * Returns the ids of the sessions seen so far, in no particular order.
+	 * 
+	 * @return the session ids
+	 */
+	long[] getSessionIds() {
+		long[] result = new long[sessionCount];
+		int n = 0;
+		for(int i = 0; i < ids.length; i++) {
+			if(states[i] >= 0) {
+				result[n++] = ids[i];
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Create a live session in the replayed state of the given session, for example to
+	 * continue an incident interactively.
+	 * 
+	 * @param sessionId the session
+	 * @return a session with a new Player, or null if the session has no records
+	 */
+	CoffeeMakerQuestImpl restore(long sessionId) {
+		long state = getState(sessionId);
+		if(state < 0) {
+			return null;
+		}
+		CoffeeMakerQuestImpl session = newSession();
+		session.restore(state);
+		return session;
+	}
+	
+	private CoffeeMakerQuestImpl newSession() {
+		CoffeeMakerQuestImpl session = new CoffeeMakerQuestImpl(world);
+		session.setPlayer(new Player());
+		return session;
+	}
+	
+	// Receives each record of a verified replay, with the state after the fast replay applied it
+	private interface Listener {
+		void record(long sessionId, int code, int responseHash, long state);
+	}
+	
+	private long run(File file, Listener listener) throws IOException {
+		try(FileChannel channel = new FileInputStream(file).getChannel()) {
+			ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			buf.flip();
+			fill(channel, buf, CommandJournal.HEADER_BYTES);
+			if(buf.remaining() < CommandJournal.HEADER_BYTES || buf.getInt() != CommandJournal.MAGIC) {
+				throw new IOException(file + " is not a command journal");
+			}
+			int version = buf.getInt();
+			if(version != CommandJournal.VERSION) {
+				throw new IOException(file + " has unsupported journal version " + version);
+			}
+			boolean responseHashes = (buf.getInt() & CommandJournal.RESPONSE_HASHES) != 0;
+			if(listener != null && !responseHashes) {
+				throw new IOException(file + " has no response hashes to verify");
+			}
+			buf.getInt();
+			buf.getLong();
+			
+			long records = 0;
+			while(true) {
+				if(buf.remaining() < MAX_RECORD_BYTES) {
+					fill(channel, buf, MAX_RECORD_BYTES);
+				}
+				if(buf.remaining() < 17) {
+					return records;
+				}
+				int start = buf.position();
+				long id = buf.getLong();
+				buf.getLong();
+				int code = buf.get();
+				int operandBytes = code < COMMANDS.length ? (responseHashes ? 4 : 0)
+						: code == CommandJournal.SET_ROOM ? 4 : code == CommandJournal.RESTORE ? 8 : -1;
+				if(operandBytes < 0 || code < 0) {
+					throw new IOException(file + " has an unknown record at offset " + start);
+				}
+				if(buf.remaining() < operandBytes) {
+					// Torn record at the end of the journal
+					return records;
+				}
+				
+				int slot = find(id);
+				long state = states[slot];
+				if(state < 0) {
+					state = 0;
+					ids[slot] = id;
+					sessionCount++;
+				}
+				int responseHash = 0;
+				if(code == CommandJournal.SET_ROOM) {
+					int room = buf.getInt();
+					state |= CoffeeMakerQuestImpl.SNAPSHOT_INITIALIZED;
+					if(room >= 0) {
+						state = (state & ~0xFFFFFFFFL) | room;
+					}
+				}
+				else if(code == CommandJournal.RESTORE) {
+					state = buf.getLong();
+				}
+				else {
+					if(responseHashes) {
+						responseHash = buf.getInt();
+					}
+					int room = (int) state;
+					Command command = COMMANDS[code];
+					switch(command) {
+					case NORTH:
+					case SOUTH:
+					case EAST:
+					case WEST:
+						int next = world.exit(room, command.getDirection());
+						if(next >= 0) {
+							state = (state & ~0xFFFFFFFFL) | next;
+						}
+						break;
+					case LOOK:
+						state |= (long) itemMasks[room] << CoffeeMakerQuestImpl.SNAPSHOT_INVENTORY_SHIFT;
+						break;
+					case DRINK:
+						long inventory = (state & INVENTORY_BITS) >>> CoffeeMakerQuestImpl.SNAPSHOT_INVENTORY_SHIFT;
+						state = (state & ~DRUNK_BITS) | CoffeeMakerQuestImpl.SNAPSHOT_DRANK
+								| inventory << CoffeeMakerQuestImpl.SNAPSHOT_DRUNK_SHIFT;
+						break;
+					default:
+						break;
+					}
+				}
+				states[slot] = state;
+				records++;
+				if(listener != null) {
+					listener.record(id, code, responseHash, state);
+				}
+				if(sessionCount * 2 > ids.length) {
+					grow();
+				}
+			}
+		}
+	}
+	
+	// Read from channel until buf holds at least min bytes or the file ends; leaves buf ready to get from
+	private static void fill(FileChannel channel, ByteBuffer buf, int min) throws IOException {
+		buf.compact();
+		while(buf.position() < min) {
+			if(channel.read(buf) < 0) {
+				break;
+			}
+		}
+		buf.flip();
+	}
+	
+	// Slot of sessionId, or the empty slot where it belongs
+	private int find(long sessionId) {
+		int mask = ids.length - 1;
+		int slot = Long.hashCode(sessionId * 0x9E3779B97F4A7C15L) & mask;
+		while(states[slot] >= 0 && ids[slot] != sessionId) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	private void grow() {
+		long[] oldIds = ids;
+		long[] oldStates = states;
+		ids = new long[oldIds.length * 2];
+		states = new long[oldStates.length * 2];
+		Arrays.fill(states, -1);
+		for(int i = 0; i < oldIds.length; i++) {
+			if(oldStates[i] >= 0) {
+				int slot = find(oldIds[i]);
+				ids[slot] = oldIds[i];
+				states[slot] = oldStates[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A RoomStore that one thread can keep adding rooms to while any number of others play
+ * in it, so designers can extend a world that is being played without stopping the
+ * server. Readers never take a lock: rooms live in an append-only array of segments
+ * that never move once allocated, and a volatile size publishes each room after it
+ * has been stored with its south door.
+ * 
+ * The north door of the previous northern-most room is labeled last, after the new
+ * room is published (see World.addRoomAtNorth), and a World over this store lets
+ * players go north only through a labeled north door. A player therefore sees the door
+ * and can walk through it at the same time: the description never shows a door that
+ * leads nowhere yet, and no move leads into a room that is not fully wired.
+ * 
+ * A world over this store stays a north/south chain. Only one thread may add rooms at
+ * a time. The win-path oracle of the World is only available once it is frozen (see
+ * World.getWinPathOracle).
+ */
+class LiveRoomStore extends RoomStore {
+	private static final int SEGMENT_BITS = 10;
+	private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+	
+	// Segment i holds rooms i * SEGMENT_SIZE and up. The directory is replaced by a longer
+	// copy when it is full, so a reader sees a directory with every published segment.
+	private volatile Room[][] segments = new Room[16][];
+	// Number of rooms published; written after the room itself
+	private volatile int size = 0;
+	// Position of each room. Rooms are matched by equals, which is identity for a Room.
+	private final ConcurrentHashMap<Room, Integer> roomIndex = new ConcurrentHashMap<Room, Integer>();
+	// Case-folded adjectives and furnishings of every room
+	private final Set<String> adjectives = ConcurrentHashMap.newKeySet();
+	private final Set<String> furnishings = ConcurrentHashMap.newKeySet();
+	
+	int size() {
+		return size;
+	}
+	
+	Room get(int index) {
+		// Reading size first makes the room and its segment visible
+		int n = size;
+		if(index < 0 || index >= n) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + n);
+		}
+		return segments[index >>> SEGMENT_BITS][index & (SEGMENT_SIZE - 1)];
+	}
+	
+	int indexOf(Room room) {
+		Integer index = roomIndex.get(room);
+		if(index == null) {
+			return -1;
+		}
+		return index;
+	}
+	
+	boolean containsAdjective(String adjective) {
+		return adjective != null && adjectives.contains(foldCase(adjective));
+	}
+	
+	boolean containsFurnishing(String furnishing) {
+		return furnishing != null && furnishings.contains(foldCase(furnishing));
+	}
+	
+	void add(Room room, String southDoor) {
+		int n = size;
+		ensureCapacity(n + 1);
+		segments[n >>> SEGMENT_BITS][n & (SEGMENT_SIZE - 1)] = room;
+		// Indexed first, so that indexOf finds every room a reader can get
+		roomIndex.put(room, n);
+		size = n + 1;
+		String adjective = room.getAdjective();
+		if(adjective != null) {
+			adjectives.add(foldCase(adjective));
+		}
+		String furnishing = room.getFurnishing();
+		if(furnishing != null) {
+			furnishings.add(foldCase(furnishing));
+		}
+	}
+	
+	void setNorthDoor(int index, String door) {
+		get(index).setNorthDoor(door);
+	}
+	
+	void setDoor(int index, Direction direction, String door) {
+		throw new UnsupportedOperationException("A live world is a north/south chain");
+	}
+	
+	boolean isLive() {
+		return true;
+	}
+	
+	void ensureCapacity(int minCapacity) {
+		int needed = (minCapacity + SEGMENT_SIZE - 1) >>> SEGMENT_BITS;
+		Room[][] directory = segments;
+		if(needed > directory.length) {
+			directory = Arrays.copyOf(directory, Math.max(needed, directory.length * 2));
+		}
+		// Segments are allocated in order, so the missing ones are at the end
+		for(int i = needed - 1; i >= 0 && directory[i] == null; i--) {
+			directory[i] = new Room[SEGMENT_SIZE];
+		}
+		if(directory != segments) {
+			segments = directory;
+		}
+	}
+}
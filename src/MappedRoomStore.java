@@ -0,0 +1,458 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * A read-only RoomStore kept in a memory-mapped world file, for worlds too large to
+ * keep on the heap. Opening a world maps the file and reads its header, whatever its
+ * size; the rooms stay in the page cache, outside the garbage-collected heap. Room
+ * objects handed out by get() are flyweight views that decode a record when asked.
+ * 
+ * File layout (little-endian): magic "CMQW", format version, number of rooms, capacity
+ * of the name indexes, content hash of the world, size of the string table, CRC-32 of
+ * everything after the header (as a long). Then one RECORD_BYTES record per room, from
+ * the first room northwards: the string-table offsets of the adjective, furnishing,
+ * north door and south door (-1 for null) and the Item ordinal (-1 for null). Then the
+ * string table, where each string is its UTF-8 length followed by its bytes; door
+ * labels are stored once. Then the adjective index and the furnishing index:
+ * open-addressing tables of room + 1 (0 is an empty slot) keyed by
+ * RoomStore.foldedHashCode, like those of a RoomTable.
+ * 
+ * Each section must fit in one mapping of at most 2 GiB, which allows about 60 million
+ * rooms. Opening a file does not read the sections, so it does not check the CRC either;
+ * call checksumMatches() for that (WorldCompiler.load does).
+ */
+class MappedRoomStore extends RoomStore {
+	static final int MAGIC = 0x57514d43;
+	static final int VERSION = 2;
+	static final int HEADER_BYTES = 40;
+	static final int RECORD_BYTES = 20;
+	
+	private static final Item[] ITEMS = Item.values();
+	private static final int ADJECTIVE = 0;
+	private static final int FURNISHING = 4;
+	private static final int NORTH_DOOR = 8;
+	private static final int SOUTH_DOOR = 12;
+	private static final int ITEM = 16;
+	// Size of the buffers the sections are written through
+	private static final int WRITE_BUFFER = 1 << 20;
+	// Each thread's buffer that fields are copied into before decoding; grows as needed
+	private static final ThreadLocal<byte[]> fieldBytes = ThreadLocal.withInitial(() -> new byte[64]);
+	
+	private final int size;
+	private final long contentHash;
+	private final long checksum;
+	private final ByteBuffer records;
+	private final ByteBuffer strings;
+	private final ByteBuffer indexes;
+	private final IntBuffer adjectiveIndex;
+	private final IntBuffer furnishingIndex;
+	
+	/**
+	 * Open a world file written by write().
+	 * 
+	 * @param file the file to map
+	 * @throws IOException if the file cannot be read or is not a valid world file
+	 */
+	MappedRoomStore(File file) throws IOException {
+		try(RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			while(header.hasRemaining()) {
+				if(channel.read(header, header.position()) < 0) {
+					throw new IOException(file + " is not a world file");
+				}
+			}
+			header.flip();
+			if(header.getInt() != MAGIC) {
+				throw new IOException(file + " is not a world file");
+			}
+			int version = header.getInt();
+			if(version != VERSION) {
+				throw new IOException(file + " has unsupported world version " + version);
+			}
+			size = header.getInt();
+			int capacity = header.getInt();
+			contentHash = header.getLong();
+			long stringBytes = header.getLong();
+			checksum = header.getLong();
+			long stringsOffset = HEADER_BYTES + (long) size * RECORD_BYTES;
+			long indexOffset = stringsOffset + stringBytes;
+			if(size < 0 || capacity < 0 || stringBytes < 0 || channel.size() < indexOffset + capacity * 8L) {
+				throw new IOException(file + " is truncated");
+			}
+			records = map(channel, HEADER_BYTES, (long) size * RECORD_BYTES);
+			strings = map(channel, stringsOffset, stringBytes);
+			indexes = map(channel, indexOffset, capacity * 8L);
+			adjectiveIndex = slice(indexes, 0, capacity * 4).asIntBuffer();
+			furnishingIndex = slice(indexes, capacity * 4, capacity * 4).asIntBuffer();
+		}
+	}
+	
+	/**
+	 * Whether the sections of the file still have the CRC-32 they were written with.
+	 * This reads the whole file.
+	 * 
+	 * @return true if the file is intact
+	 */
+	boolean checksumMatches() {
+		return checksum(records, strings, indexes) == checksum;
+	}
+	
+	// CRC-32 of the sections, in order
+	private static long checksum(ByteBuffer... sections) {
+		CRC32 crc = new CRC32();
+		for(ByteBuffer section : sections) {
+			crc.update(section.duplicate());
+		}
+		return crc.getValue();
+	}
+	
+	// Bytes [offset, offset + length) of buffer, in its byte order
+	private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer slice = buffer.duplicate();
+		slice.position(offset).limit(offset + length);
+		return slice.slice().order(buffer.order());
+	}
+	
+	// The mapping stays valid after the channel is closed
+	private static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * Write the rooms of a chain world to file, replacing its contents. The world is read
+	 * twice, once for the records and strings and once for the indexes, so writing needs
+	 * no more heap than the door labels.
+	 * 
+	 * @param file  the file to write
+	 * @param world the world to write; its doors must form a north/south chain
+	 * @throws IOException if the file cannot be written or the world is too large for the format
+	 */
+	static void write(File file, World world) throws IOException {
+		if(!world.isChain()) {
+			throw new IllegalArgumentException("Only chain worlds can be written to a world file");
+		}
+		write(file, world.size(), world::get, world.contentHash());
+	}
+	
+	/**
+	 * Write a chain of rooms to file, replacing its contents. Each room is asked for
+	 * twice, and may be a new object each time.
+	 * 
+	 * @param file        the file to write
+	 * @param size        number of rooms
+	 * @param rooms       returns the room at an index, with its north and south doors set
+	 * @param contentHash the World.contentHash of the rooms
+	 * @throws IOException if the file cannot be written or there are too many rooms for the format
+	 */
+	static void write(File file, int size, IntFunction<Room> rooms, long contentHash) throws IOException {
+		if(size > 1 << 26) {
+			throw new IOException("Too many rooms for a world file: " + size);
+		}
+		int capacity = 16;
+		while(capacity < size * 2L) {
+			capacity <<= 1;
+		}
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+			raf.setLength(0);
+			Section records = new Section(channel, HEADER_BYTES);
+			Section strings = new Section(channel, HEADER_BYTES + (long) size * RECORD_BYTES);
+			HashMap<String, Integer> doors = new HashMap<String, Integer>();
+			for(int i = 0; i < size; i++) {
+				Room room = rooms.apply(i);
+				Item item = room.getItem();
+				ByteBuffer record = records.reserve(RECORD_BYTES);
+				record.putInt(strings.putString(room.getAdjective()));
+				record.putInt(strings.putString(room.getFurnishing()));
+				record.putInt(door(strings, doors, room.getDoor(Direction.NORTH)));
+				record.putInt(door(strings, doors, room.getDoor(Direction.SOUTH)));
+				record.put((byte) (item == null ? -1 : item.ordinal())).put((byte) 0).putShort((short) 0);
+			}
+			records.flush();
+			strings.flush();
+			if(strings.written > Integer.MAX_VALUE) {
+				throw new IOException("Too much text for a world file: " + strings.written + " bytes");
+			}
+			
+			long indexOffset = strings.start + strings.written;
+			ByteBuffer indexes = channel.map(FileChannel.MapMode.READ_WRITE, indexOffset, capacity * 8L).order(ByteOrder.LITTLE_ENDIAN);
+			IntBuffer adjectiveIndex = slice(indexes, 0, capacity * 4).asIntBuffer();
+			IntBuffer furnishingIndex = slice(indexes, capacity * 4, capacity * 4).asIntBuffer();
+			for(int i = 0; i < size; i++) {
+				Room room = rooms.apply(i);
+				insert(adjectiveIndex, room.getAdjective(), i);
+				insert(furnishingIndex, room.getFurnishing(), i);
+			}
+			
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(capacity).putLong(contentHash).putLong(strings.written)
+					.putLong(checksum(map(channel, records.start, records.written), map(channel, strings.start, strings.written), indexes));
+			header.clear();
+			while(header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+			channel.force(true);
+		}
+	}
+	
+	// Offset of the door label in the string table, writing it on first use
+	private static int door(Section strings, HashMap<String, Integer> doors, String door) throws IOException {
+		if(door == null) {
+			return -1;
+		}
+		Integer offset = doors.get(door);
+		if(offset == null) {
+			offset = strings.putString(door);
+			doors.put(door, offset);
+		}
+		return offset;
+	}
+	
+	private static void insert(IntBuffer index, String key, int row) {
+		// A null name never matches another room, so there is nothing to index.
+		if(key == null) {
+			return;
+		}
+		int mask = index.capacity() - 1;
+		int slot = foldedHashCode(key) & mask;
+		while(index.get(slot) != 0) {
+			slot = (slot + 1) & mask;
+		}
+		index.put(slot, row + 1);
+	}
+	
+	// A section of the file written in order through a buffer
+	private static class Section {
+		final FileChannel channel;
+		final long start;
+		long written = 0;
+		final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+		
+		Section(FileChannel channel, long start) {
+			this.channel = channel;
+			this.start = start;
+		}
+		
+		// Return the buffer with room for at least n more bytes
+		ByteBuffer reserve(int n) throws IOException {
+			if(buffer.remaining() < n) {
+				flush();
+			}
+			return buffer;
+		}
+		
+		// Append s and return its offset in the section, or -1 if s is null
+		int putString(String s) throws IOException {
+			if(s == null) {
+				return -1;
+			}
+			long offset = written + buffer.position();
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			reserve(4).putInt(bytes.length);
+			for(int from = 0; from < bytes.length; ) {
+				int n = Math.min(bytes.length - from, reserve(1).remaining());
+				buffer.put(bytes, from, n);
+				from += n;
+			}
+			return (int) Math.min(offset, Integer.MAX_VALUE);
+		}
+		
+		void flush() throws IOException {
+			buffer.flip();
+			while(buffer.hasRemaining()) {
+				written += channel.write(buffer, start + written);
+			}
+			buffer.clear();
+		}
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	Room get(int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return new View(this, index);
+	}
+	
+	int indexOf(Room room) {
+		if(room instanceof View) {
+			View view = (View) room;
+			return view.store == this ? view.index : -1;
+		}
+		String adjective = room.getAdjective();
+		if(adjective == null) {
+			return -1;
+		}
+		int row = find(adjectiveIndex, ADJECTIVE, adjective);
+		if(row < 0 || !adjective.equals(field(row, ADJECTIVE)) || !Objects.equals(field(row, FURNISHING), room.getFurnishing())
+				|| itemAt(row) != room.getItem()) {
+			return -1;
+		}
+		return row;
+	}
+	
+	boolean containsAdjective(String adjective) {
+		return adjective != null && find(adjectiveIndex, ADJECTIVE, adjective) >= 0;
+	}
+	
+	boolean containsFurnishing(String furnishing) {
+		return furnishing != null && find(furnishingIndex, FURNISHING, furnishing) >= 0;
+	}
+	
+	void add(Room room, String southDoor) {
+		throw new UnsupportedOperationException("A world file is read-only");
+	}
+	
+	void setNorthDoor(int index, String door) {
+		throw new UnsupportedOperationException("A world file is read-only");
+	}
+	
+	void setDoor(int index, Direction direction, String door) {
+		throw new UnsupportedOperationException("A world file is read-only");
+	}
+	
+	long contentHash() {
+		return contentHash;
+	}
+	
+	// Returns the row whose field is equalsIgnoreCase to key, or -1
+	private int find(IntBuffer index, int field, String key) {
+		int mask = index.capacity() - 1;
+		int slot = foldedHashCode(key) & mask;
+		while(index.get(slot) != 0) {
+			int row = index.get(slot) - 1;
+			if(key.equalsIgnoreCase(field(row, field))) {
+				return row;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+	
+	// Decode a string field of the record of row
+	private String field(int row, int field) {
+		int offset = records.getInt(row * RECORD_BYTES + field);
+		if(offset < 0) {
+			return null;
+		}
+		int length = strings.getInt(offset);
+		byte[] bytes = fieldBytes.get();
+		if(bytes.length < length) {
+			bytes = new byte[Math.max(length, bytes.length * 2)];
+			fieldBytes.set(bytes);
+		}
+		// Absolute bulk get: the buffer's position is shared by every thread
+		strings.get(offset + 4, bytes, 0, length);
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+	
+	private Item itemAt(int row) {
+		byte item = records.get(row * RECORD_BYTES + ITEM);
+		return item < 0 ? null : ITEMS[item];
+	}
+	
+	/**
+	 * A read-only Room backed by a record of a MappedRoomStore. Two views are equal when
+	 * they show the same record of the same store.
+	 */
+	static class View extends Room {
+		private final MappedRoomStore store;
+		private final int index;
+		
+		View(MappedRoomStore store, int index) {
+			super(null, null, null);
+			this.store = store;
+			this.index = index;
+		}
+		
+		public void setNorthDoor(String door) {
+			throw new UnsupportedOperationException("A world file is read-only");
+		}
+		
+		public void setSouthDoor(String door) {
+			throw new UnsupportedOperationException("A world file is read-only");
+		}
+		
+		public void setEastDoor(String door) {
+			throw new UnsupportedOperationException("A world file is read-only");
+		}
+		
+		public void setWestDoor(String door) {
+			throw new UnsupportedOperationException("A world file is read-only");
+		}
+		
+		public String getDoor(Direction direction) {
+			if (FaultInjector.roomArmed()) {
+				FaultInjector.injectRoom("getDoor");
+			}
+			switch(direction) {
+			case NORTH:
+				return store.field(index, NORTH_DOOR);
+			case SOUTH:
+				return store.field(index, SOUTH_DOOR);
+			default:
+				return null;
+			}
+		}
+		
+		public String getFurnishing() {
+			if (FaultInjector.roomArmed()) {
+				FaultInjector.injectRoom("getFurnishing");
+			}
+			return store.field(index, FURNISHING);
+		}
+		
+		public String getAdjective() {
+			if (FaultInjector.roomArmed()) {
+				FaultInjector.injectRoom("getAdjective");
+			}
+			return store.field(index, ADJECTIVE);
+		}
+		
+		public Item getItem() {
+			if (FaultInjector.roomArmed()) {
+				FaultInjector.injectRoom("getItem");
+			}
+			return store.itemAt(index);
+		}
+		
+		public String getDescription() {
+			if (FaultInjector.roomArmed()) {
+				FaultInjector.injectRoom("getDescription");
+			}
+			return describe();
+		}
+		
+		public byte[] getDescriptionBytes() {
+			if (FaultInjector.roomArmed()) {
+				FaultInjector.injectRoom("getDescriptionBytes");
+			}
+			// Views are short-lived, so there is nothing worth caching here.
+			return describe().getBytes(StandardCharsets.UTF_8);
+		}
+		
+		private String describe() {
+			return Room.describe(store.field(index, ADJECTIVE), store.field(index, FURNISHING),
+					store.field(index, NORTH_DOOR), store.field(index, SOUTH_DOOR), null, null);
+		}
+		
+		public boolean equals(Object o) {
+			if(!(o instanceof View)) {
+				return false;
+			}
+			View other = (View) o;
+			return store == other.store && index == other.index;
+		}
+		
+		public int hashCode() {
+			return System.identityHashCode(store) * 31 + index;
+		}
+	}
+}
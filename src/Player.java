@@ -1,78 +1,95 @@
 class Player {
-	private boolean hasCoffee;
-	private boolean hasCream;
-	private boolean hasSugar;
+	// Bits of the inventory mask returned by inventoryMask()
+	static final int COFFEE = 1;
+	static final int CREAM = 2;
+	static final int SUGAR = 4;
+	
+	// getInventoryString() for each of the 8 possible inventory masks
+	private static final String[] INVENTORY_STRINGS = new String[8];
+	static {
+		for(int mask = 0; mask < INVENTORY_STRINGS.length; mask++) {
+			String str = "";
+			str += (mask & COFFEE) != 0 ? "You have a cup of delicious coffee.\n" : "YOU HAVE NO COFFEE!\n";
+			str += (mask & CREAM) != 0 ? "You have some fresh cream.\n" : "YOU HAVE NO CREAM!\n";
+			str += (mask & SUGAR) != 0 ? "You have some tasty sugar.\n" : "YOU HAVE NO SUGAR!\n";
+			INVENTORY_STRINGS[mask] = str;
+		}
+	}
+	
+	private int inventory;
 	
 	public Player() {
-		hasCoffee = false;
-		hasCream = false;
-		hasSugar = false;
+		inventory = 0;
 	}
 	
 	public boolean checkCoffee() {
-		if (Config.getBuggyPlayer()) {
-			throw new UnsupportedOperationException("Injected bug for Player class");
+		if (FaultInjector.playerArmed()) {
+			FaultInjector.injectPlayer("checkCoffee");
 		}
-		return hasCoffee;
+		return (inventory & COFFEE) != 0;
 	}
 	
 	public boolean checkCream() {
-		if (Config.getBuggyPlayer()) {
-			throw new UnsupportedOperationException("Injected bug for Player class");
+		if (FaultInjector.playerArmed()) {
+			FaultInjector.injectPlayer("checkCream");
 		}
-		return hasCream;
+		return (inventory & CREAM) != 0;
 	}
 	
 	public boolean checkSugar() {
-		if (Config.getBuggyPlayer()) {
-			throw new UnsupportedOperationException("Injected bug for Player class");
+		if (FaultInjector.playerArmed()) {
+			FaultInjector.injectPlayer("checkSugar");
+		}
+		return (inventory & SUGAR) != 0;
+	}
+	
+	// Return the inventory as a combination of the COFFEE, CREAM and SUGAR bits
+	public int inventoryMask() {
+		if (FaultInjector.playerArmed()) {
+			FaultInjector.injectPlayer("inventoryMask");
+		}
+		return inventory;
+	}
+	
+	// Replace the inventory with the given combination of the COFFEE, CREAM and SUGAR bits
+	public void setInventoryMask(int mask) {
+		if (FaultInjector.playerArmed()) {
+			FaultInjector.injectPlayer("setInventoryMask");
 		}
-		return hasSugar;
+		inventory = mask & (COFFEE | CREAM | SUGAR);
 	}
 	
 	public void addItem(Item item) {
-		if (Config.getBuggyPlayer()) {
-			throw new UnsupportedOperationException("Injected bug for Player class");
+		if (FaultInjector.playerArmed()) {
+			FaultInjector.injectPlayer("addItem");
 		}
+		inventory |= mask(item);
+	}
+	
+	// Return the inventory mask bit of item (0 for NONE)
+	static int mask(Item item) {
 		switch(item) {
 		case COFFEE:
-			hasCoffee = true;
-			break;
+			return COFFEE;
 		case CREAM:
-			hasCream = true;
-			break;
+			return CREAM;
 		case SUGAR:
-			hasSugar = true;
-			break;
-		case NONE:
-			break;
+			return SUGAR;
+		default:
+			return 0;
 		}
 	}
 	
+	// Return the inventory string for the given inventory mask
+	static String inventoryString(int mask) {
+		return INVENTORY_STRINGS[mask];
+	}
+	
 	// Return the string describing all the items in the inventory
 	public String getInventoryString() {
-		if (Config.getBuggyPlayer()) {
-			throw new UnsupportedOperationException("Injected bug for Player class");
-		}
-		String str = "";
-		if(hasCoffee) {
-			str += "You have a cup of delicious coffee.\n";
-		}
-		else {
-			str += "YOU HAVE NO COFFEE!\n";
-		}
-		if(hasCream) {
-			str += "You have some fresh cream.\n";
-		}
-		else {
-			str += "YOU HAVE NO CREAM!\n";
-		}
-		if(hasSugar) {
-			str += "You have some tasty sugar.\n";
-		}
-		else {
-			str += "YOU HAVE NO SUGAR!\n";
+		if (FaultInjector.playerArmed()) {
+			FaultInjector.injectPlayer("getInventoryString");
 		}
-		return str;
+		return INVENTORY_STRINGS[inventory];
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,229 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Plays huge numbers of headless games in one shared world to see how a layout
+ * plays: the win rate, why players lose and how long games last. A playthrough
+ * starts in the first room with an empty inventory and follows a Policy until the
+ * player drinks. Commands have the same effect as in CoffeeMakerQuestImpl (moves go
+ * through World.exit, so graph worlds work too), but the state is just a room index
+ * and an inventory mask and no text is produced, so playing allocates nothing.
+ * Playthroughs are spread over a fork/join pool.
+ * 
+ * Usage: java PlaythroughSimulator [random|sweep] [playthroughs] [max-commands]
+ */
+class PlaythroughSimulator {
+	// Playthroughs run by one fork/join task without splitting further
+	private static final int CHUNK = 4096;
+	private static final DrinkOutcome.Reason[] REASONS = DrinkOutcome.Reason.values();
+	
+	/**
+	 * Chooses the next command of a playthrough.
+	 */
+	interface Policy {
+		/**
+		 * Returns the command to play next. It must not allocate if the simulation is to
+		 * stay allocation-free.
+		 * 
+		 * @param room      index of the player's room
+		 * @param inventory inventory mask made of Player.COFFEE, Player.CREAM and Player.SUGAR
+		 * @param itemMask  inventory bit of the item in the player's room, or 0 if there is none
+		 * @param rooms     number of rooms in the world
+		 * @param random    random numbers for this playthrough
+		 * @return the command
+		 */
+		Command next(int room, int inventory, int itemMask, int rooms, SplittableRandom random);
+	}
+	
+	// Commands the random policy chooses from
+	private static final Command[] RANDOM_COMMANDS = {Command.NORTH, Command.SOUTH, Command.LOOK, Command.DRINK};
+	
+	// Plays N, S, L or D with equal probability
+	static final Policy RANDOM = (room, inventory, itemMask, rooms, random) -> RANDOM_COMMANDS[random.nextInt(RANDOM_COMMANDS.length)];
+	
+	// Walks north looking in every room and drinks once it has everything or reaches the last room
+	static final Policy SWEEP = (room, inventory, itemMask, rooms, random) -> {
+		if(inventory == 7 || (room == rooms - 1 && (inventory | itemMask) == inventory)) {
+			return Command.DRINK;
+		}
+		if((inventory | itemMask) != inventory) {
+			return Command.LOOK;
+		}
+		return Command.NORTH;
+	};
+	
+	/**
+	 * The result of a simulation.
+	 */
+	static class Report {
+		final long playthroughs;
+		// Playthroughs ending with each DrinkOutcome.Reason, by ordinal
+		final long[] reasons;
+		// Playthroughs cut off after the maximum number of commands
+		final long unfinished;
+		// Commands played by the playthroughs that drank, including the "D"
+		final long commands;
+		final long elapsedNanos;
+		
+		Report(long playthroughs, long[] reasons, long unfinished, long commands, long elapsedNanos) {
+			this.playthroughs = playthroughs;
+			this.reasons = reasons;
+			this.unfinished = unfinished;
+			this.commands = commands;
+			this.elapsedNanos = elapsedNanos;
+		}
+		
+		long getCount(DrinkOutcome.Reason reason) {
+			return reasons[reason.ordinal()];
+		}
+		
+		double winRate() {
+			return (double) getCount(DrinkOutcome.Reason.WIN) / playthroughs;
+		}
+		
+		// Return the average number of commands of the playthroughs that drank
+		double averagePathLength() {
+			long finished = playthroughs - unfinished;
+			return finished == 0 ? 0 : (double) commands / finished;
+		}
+		
+		double playthroughsPerSecond() {
+			return playthroughs * 1e9 / elapsedNanos;
+		}
+		
+		public String toString() {
+			StringBuilder str = new StringBuilder(String.format(
+					"%d playthroughs in %.1f ms: %.0f playthroughs/sec, win rate %.4f, average path length %.2f, %d unfinished",
+					playthroughs, elapsedNanos / 1e6, playthroughsPerSecond(), winRate(), averagePathLength(), unfinished));
+			for(DrinkOutcome.Reason reason : REASONS) {
+				str.append(String.format("%n  %-26s %d", reason, getCount(reason)));
+			}
+			return str.toString();
+		}
+	}
+	
+	private final World world;
+	private final byte[] itemMasks;
+	// DrinkOutcome.Reason ordinal for each inventory mask
+	private final int[] reasonByMask = new int[8];
+	private final ForkJoinPool pool;
+	
+	/**
+	 * Create a simulator for the given world running on the common fork/join pool.
+	 * 
+	 * @param world the world, which must have at least one room and not change while simulating
+	 */
+	PlaythroughSimulator(World world) {
+		this(world, ForkJoinPool.commonPool());
+	}
+	
+	PlaythroughSimulator(World world, ForkJoinPool pool) {
+		this.world = world;
+		this.itemMasks = world.itemMasks();
+		this.pool = pool;
+		for(int mask = 0; mask < reasonByMask.length; mask++) {
+			reasonByMask[mask] = DrinkOutcome.forInventory(mask).getReason().ordinal();
+		}
+	}
+	
+	/**
+	 * Play playthroughs games with the given policy. The result only depends on the
+	 * arguments, not on how the work is spread over threads.
+	 * 
+	 * @param policy       chooses the commands
+	 * @param playthroughs number of games to play
+	 * @param maxCommands  a game that has not drunk after this many commands is cut off
+	 * @param seed         seed of the random numbers given to the policy
+	 * @return the report
+	 */
+	Report run(Policy policy, long playthroughs, int maxCommands, long seed) {
+		long start = System.nanoTime();
+		long[] totals = pool.invoke(new Simulation(policy, 0, playthroughs, maxCommands, seed));
+		long elapsed = System.nanoTime() - start;
+		return new Report(playthroughs, Arrays.copyOf(totals, REASONS.length),
+				totals[REASONS.length], totals[REASONS.length + 1], elapsed);
+	}
+	
+	// Plays playthroughs [from, to), splitting in halves down to CHUNK. The result holds
+	// the count of each Reason, then the unfinished count, then the commands played.
+	private class Simulation extends RecursiveTask<long[]> {
+		private static final long serialVersionUID = 1L;
+		
+		private final Policy policy;
+		private final long from;
+		private final long to;
+		private final int maxCommands;
+		private final long seed;
+		
+		Simulation(Policy policy, long from, long to, int maxCommands, long seed) {
+			this.policy = policy;
+			this.from = from;
+			this.to = to;
+			this.maxCommands = maxCommands;
+			this.seed = seed;
+		}
+		
+		protected long[] compute() {
+			if(to - from > CHUNK) {
+				long middle = from + Math.max(1, (to - from) / 2 / CHUNK) * CHUNK;
+				Simulation north = new Simulation(policy, middle, to, maxCommands, seed);
+				north.fork();
+				long[] totals = new Simulation(policy, from, middle, maxCommands, seed).compute();
+				long[] other = north.join();
+				for(int i = 0; i < totals.length; i++) {
+					totals[i] += other[i];
+				}
+				return totals;
+			}
+			long[] totals = new long[REASONS.length + 2];
+			SplittableRandom random = new SplittableRandom(seed ^ (from * 0x9E3779B97F4A7C15L));
+			for(long i = from; i < to; i++) {
+				play(random, totals);
+			}
+			return totals;
+		}
+		
+		// Play one game from the first room and add its outcome to totals
+		private void play(SplittableRandom random, long[] totals) {
+			int rooms = itemMasks.length;
+			int room = 0;
+			int inventory = 0;
+			for(int commands = 1; commands <= maxCommands; commands++) {
+				Command command = policy.next(room, inventory, itemMasks[room], rooms, random);
+				switch(command) {
+				case NORTH:
+				case SOUTH:
+				case EAST:
+				case WEST:
+					int next = world.exit(room, command.getDirection());
+					if(next >= 0) {
+						room = next;
+					}
+					break;
+				case LOOK:
+					inventory |= itemMasks[room];
+					break;
+				case DRINK:
+					totals[reasonByMask[inventory]]++;
+					totals[REASONS.length + 1] += commands;
+					return;
+				default:
+					break;
+				}
+			}
+			totals[REASONS.length]++;
+		}
+	}
+	
+	public static void main(String[] args) {
+		Config.setBuggyRoom(false);
+		Config.setBuggyPlayer(false);
+		Policy policy = args.length > 0 && args[0].equals("sweep") ? SWEEP : RANDOM;
+		long playthroughs = args.length > 1 ? Long.parseLong(args[1]) : 10000000;
+		int maxCommands = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		PlaythroughSimulator simulator = new PlaythroughSimulator(Game.createWorld());
+		// The first run warms up the JIT
+		simulator.run(policy, playthroughs / 10, maxCommands, 1);
+		System.out.println(simulator.run(policy, playthroughs, maxCommands, 1));
+	}
+}
@@ -0,0 +1,186 @@
+import java.util.*;
+
+/**
+ * A read-only RoomStore whose rooms are generated from a seed instead of being added:
+ * a corridor of up to Integer.MAX_VALUE rooms that only exists where it is looked at.
+ * The Room at an index is built when get() is first asked for it, and only the most
+ * recently used rooms are kept (an LRU window), so memory stays flat however far north
+ * the players walk. A room evicted from the window is built again from the seed with
+ * the same adjective, furnishing, item and doors, so its description is byte-identical.
+ * 
+ * Every name ends with the room index, which keeps them unique and lets indexOf and the
+ * uniqueness checks work out the index of a room from its names instead of remembering
+ * every room. A World over this store starts out frozen (see World(RoomStore)); code
+ * that copies data for every room, such as World.itemMasks, is only practical for a
+ * corridor of modest size.
+ */
+class ProceduralRoomStore extends RoomStore {
+	private static final String[] ADJECTIVES = {"Small", "Funny", "Refinanced", "Dumb", "Bloodthirsty", "Rough",
+			"Dusty", "Quiet", "Drafty", "Gloomy", "Sunny", "Narrow", "Lofty", "Musty", "Cozy", "Chilly"};
+	private static final String[] FURNISHINGS = {"Quaint sofa", "Sad record player", "Tight pizza", "Flat energy drink",
+			"Beautiful bag of money", "Perfect air hockey table", "Creaky rocking chair", "Tall bookcase",
+			"Dented filing cabinet", "Faded rug", "Lonely piano", "Broken clock"};
+	private static final String[] DOORS = {"Magenta", "Beige", "Dead", "Vivacious", "Purple", "Massive", "Smart",
+			"Slim", "Sandy", "Minimalist", "Oak", "Iron", "Crooked", "Painted"};
+	// One room in ITEM_ODDS holds each of coffee, cream and sugar
+	private static final int ITEM_ODDS = 16;
+	
+	private final long seed;
+	private final int size;
+	// The materialized rooms, least recently used first
+	private final LinkedHashMap<Integer, Room> window;
+	
+	/**
+	 * Create a corridor of generated rooms.
+	 * 
+	 * @param seed   the same seed always generates the same rooms
+	 * @param size   number of rooms, at least 1
+	 * @param window number of rooms kept materialized, at least 1
+	 */
+	ProceduralRoomStore(long seed, int size, final int window) {
+		if(size < 1 || window < 1) {
+			throw new IllegalArgumentException("size and window must be positive");
+		}
+		this.seed = seed;
+		this.size = size;
+		this.window = new LinkedHashMap<Integer, Room>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Integer, Room> eldest) {
+				return size() > window;
+			}
+		};
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	Room get(int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		synchronized(window) {
+			Room room = window.get(index);
+			if(room == null) {
+				room = generate(index);
+				window.put(index, room);
+			}
+			return room;
+		}
+	}
+	
+	// Return the number of rooms currently materialized
+	int materialized() {
+		synchronized(window) {
+			return window.size();
+		}
+	}
+	
+	int indexOf(Room room) {
+		String adjective = room.getAdjective();
+		int index = parseIndex(adjective);
+		if(index < 0 || !adjective(index).equals(adjective) || !furnishing(index).equals(room.getFurnishing())
+				|| item(index) != room.getItem()) {
+			return -1;
+		}
+		return index;
+	}
+	
+	boolean containsAdjective(String adjective) {
+		int index = parseIndex(adjective);
+		return index >= 0 && adjective(index).equalsIgnoreCase(adjective);
+	}
+	
+	boolean containsFurnishing(String furnishing) {
+		int index = parseIndex(furnishing);
+		return index >= 0 && furnishing(index).equalsIgnoreCase(furnishing);
+	}
+	
+	void add(Room room, String southDoor) {
+		throw new UnsupportedOperationException("Generated rooms cannot be added to");
+	}
+	
+	void setNorthDoor(int index, String door) {
+		throw new UnsupportedOperationException("Generated rooms cannot be changed");
+	}
+	
+	void setDoor(int index, Direction direction, String door) {
+		throw new UnsupportedOperationException("Generated rooms cannot be changed");
+	}
+	
+	long contentHash() {
+		return mix(seed ^ mix(size));
+	}
+	
+	// Build the room at index from the seed
+	private Room generate(int index) {
+		Room room = new Room(furnishing(index), adjective(index), item(index));
+		if(index < size - 1) {
+			room.setNorthDoor(door(index, 1));
+		}
+		if(index > 0) {
+			room.setSouthDoor(door(index, 2));
+		}
+		return room;
+	}
+	
+	// Return the adjective of the room at index
+	String adjective(int index) {
+		return ADJECTIVES[pick(index, 3, ADJECTIVES.length)] + " " + index;
+	}
+	
+	// Return the furnishing of the room at index
+	String furnishing(int index) {
+		return FURNISHINGS[pick(index, 4, FURNISHINGS.length)] + " " + index;
+	}
+	
+	// Return the item in the room at index
+	Item item(int index) {
+		switch(pick(index, 5, ITEM_ODDS)) {
+		case 0:
+			return Item.COFFEE;
+		case 1:
+			return Item.CREAM;
+		case 2:
+			return Item.SUGAR;
+		default:
+			return Item.NONE;
+		}
+	}
+	
+	// Label of the north (part 1) or south (part 2) door of the room at index
+	private String door(int index, int part) {
+		return DOORS[pick(index, part, DOORS.length)];
+	}
+	
+	// A number in [0, n) that only depends on the seed, the room and which part of it is generated
+	private int pick(int index, int part, int n) {
+		return (int) ((mix(seed + index * 0x9E3779B97F4A7C15L + part) >>> 1) % n);
+	}
+	
+	// The room index at the end of a generated name, or -1 if name cannot be one
+	private int parseIndex(String name) {
+		if(name == null) {
+			return -1;
+		}
+		int space = name.lastIndexOf(' ');
+		if(space < 0 || space == name.length() - 1 || name.length() - space > 11) {
+			return -1;
+		}
+		long index = 0;
+		for(int i = space + 1; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if(c < '0' || c > '9') {
+				return -1;
+			}
+			index = index * 10 + (c - '0');
+		}
+		return index < size ? (int) index : -1;
+	}
+	
+	// The SplitMix64 finalizer
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
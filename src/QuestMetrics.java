@@ -0,0 +1,199 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.*;
+
+/**
+ * Counters and latency histograms for CoffeeMakerQuestImpl (see setMetrics), safe to
+ * share between any number of sessions on any number of threads. Every command is
+ * counted by type; the latency of one command in SAMPLE_EVERY per session is
+ * recorded in a histogram of power-of-two buckets. Both the clock and the atomic
+ * adds cost more than the command itself, so sessions count commands locally and
+ * publish the counts with each sampled command, when the game ends and when their
+ * metrics are changed. Adding rooms is counted and timed as the world-build time.
+ * 
+ * The metrics can be registered as a JMX MBean and dumped as text periodically.
+ */
+class QuestMetrics implements QuestMetricsMBean {
+	// One command in this many (a power of two) is timed in each session
+	static final int SAMPLE_EVERY = 64;
+	// Bucket i counts latencies below 2^i nanoseconds and at least 2^(i-1)
+	private static final int BUCKETS = 64;
+	private static final Command[] COMMANDS = Command.values();
+	private static final String[] NAMES = {"N", "S", "L", "I", "D", "H", "unknown", "E", "W"};
+	
+	// Daemon thread running the periodic dumps of every instance
+	private static final ScheduledExecutorService DUMPER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "quest-metrics-dump");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	private final LongAdder[] counts = new LongAdder[COMMANDS.length];
+	// histograms[c][i] counts the sampled commands of type c in bucket i
+	private final LongAdder[][] histograms = new LongAdder[COMMANDS.length][BUCKETS];
+	private final LongAdder sampledNanos = new LongAdder();
+	private final LongAdder sampled = new LongAdder();
+	private final LongAdder roomsAdded = new LongAdder();
+	private final LongAdder worldBuildNanos = new LongAdder();
+	
+	QuestMetrics() {
+		for(int c = 0; c < COMMANDS.length; c++) {
+			counts[c] = new LongAdder();
+			for(int i = 0; i < BUCKETS; i++) {
+				histograms[c][i] = new LongAdder();
+			}
+		}
+	}
+	
+	/**
+	 * Count processed commands.
+	 * 
+	 * @param command the command type
+	 * @param n       how many
+	 */
+	void count(Command command, int n) {
+		counts[command.ordinal()].add(n);
+	}
+	
+	/**
+	 * Record the latency of a sampled command. The command is counted separately.
+	 * 
+	 * @param command the command type
+	 * @param nanos   the time it took
+	 */
+	void record(Command command, long nanos) {
+		histograms[command.ordinal()][bucket(nanos)].increment();
+		sampled.increment();
+		sampledNanos.add(nanos);
+	}
+	
+	/**
+	 * Record that rooms were added to a world.
+	 * 
+	 * @param n     number of rooms added
+	 * @param nanos time taken to add them
+	 */
+	void recordRoomsAdded(int n, long nanos) {
+		roomsAdded.add(n);
+		worldBuildNanos.add(nanos);
+	}
+	
+	private static int bucket(long nanos) {
+		return 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0));
+	}
+	
+	public String[] getCommandNames() {
+		return NAMES.clone();
+	}
+	
+	public long[] getCommandCounts() {
+		long[] result = new long[counts.length];
+		for(int c = 0; c < counts.length; c++) {
+			result[c] = counts[c].sum();
+		}
+		return result;
+	}
+	
+	public long getTotalCommands() {
+		long total = 0;
+		for(LongAdder count : counts) {
+			total += count.sum();
+		}
+		return total;
+	}
+	
+	public double getMeanLatencyNanos() {
+		long n = sampled.sum();
+		return n == 0 ? 0 : (double) sampledNanos.sum() / n;
+	}
+	
+	public long getLatencyPercentileNanos(String command, double percentile) {
+		for(int c = 0; c < NAMES.length; c++) {
+			if(NAMES[c].equalsIgnoreCase(command)) {
+				return percentile(c, percentile);
+			}
+		}
+		throw new IllegalArgumentException("Unknown command type " + command);
+	}
+	
+	// Upper bound of the bucket holding the percentile of command type c
+	private long percentile(int c, double percentile) {
+		long[] buckets = new long[BUCKETS];
+		long total = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			buckets[i] = histograms[c][i].sum();
+			total += buckets[i];
+		}
+		if(total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += buckets[i];
+			if(seen >= rank) {
+				return i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+	
+	public long getRoomsAdded() {
+		return roomsAdded.sum();
+	}
+	
+	public long getWorldBuildNanos() {
+		return worldBuildNanos.sum();
+	}
+	
+	public String getSummary() {
+		StringBuilder str = new StringBuilder();
+		str.append(String.format("%-8s %12s %10s %10s %10s%n", "command", "count", "p50 ns", "p99 ns", "max ns"));
+		for(int c = 0; c < NAMES.length; c++) {
+			str.append(String.format("%-8s %12d %10d %10d %10d%n", NAMES[c], counts[c].sum(),
+					percentile(c, 50), percentile(c, 99), percentile(c, 100)));
+		}
+		str.append(String.format("rooms added %d in %.3f ms%n", getRoomsAdded(), getWorldBuildNanos() / 1e6));
+		return str.toString();
+	}
+	
+	public void reset() {
+		for(int c = 0; c < COMMANDS.length; c++) {
+			counts[c].reset();
+			for(LongAdder bucket : histograms[c]) {
+				bucket.reset();
+			}
+		}
+		sampled.reset();
+		sampledNanos.reset();
+		roomsAdded.reset();
+		worldBuildNanos.reset();
+	}
+	
+	/**
+	 * Register these metrics with the platform MBean server.
+	 * 
+	 * @param name value of the name key of the object name, e.g. "server"
+	 * @return the object name, for unregistering
+	 * @throws JMException if the name is taken or invalid
+	 */
+	ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("CoffeeMakerQuest:type=QuestMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+	
+	/**
+	 * Print getSummary() to out every periodMillis milliseconds.
+	 * 
+	 * @param out          where to print
+	 * @param periodMillis the period
+	 * @return the scheduled dump; cancel it to stop
+	 */
+	ScheduledFuture<?> startDump(PrintStream out, long periodMillis) {
+		return DUMPER.scheduleAtFixedRate(() -> out.print(getSummary()), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,53 @@
+/**
+ * JMX view of QuestMetrics. Latencies are in nanoseconds.
+ */
+public interface QuestMetricsMBean {
+	
+	/**
+	 * Returns the command types, in the order of getCommandCounts().
+	 * 
+	 * @return N, S, L, I, D, H, "unknown", E and W
+	 */
+	String[] getCommandNames();
+	
+	/**
+	 * Returns the number of commands processed of each type.
+	 * 
+	 * @return counts in the order of getCommandNames()
+	 */
+	long[] getCommandCounts();
+	
+	long getTotalCommands();
+	
+	/**
+	 * Returns the mean latency of the sampled commands of all types.
+	 * 
+	 * @return mean latency, or 0 if no command was sampled
+	 */
+	double getMeanLatencyNanos();
+	
+	/**
+	 * Returns an upper bound of the given latency percentile of one command type.
+	 * 
+	 * @param command    a name from getCommandNames()
+	 * @param percentile the percentile, from 0 to 100
+	 * @return the upper bound of the histogram bucket holding the percentile, or 0 if no command was sampled
+	 */
+	long getLatencyPercentileNanos(String command, double percentile);
+	
+	long getRoomsAdded();
+	
+	long getWorldBuildNanos();
+	
+	/**
+	 * Returns the text dump also printed periodically by QuestMetrics.startDump.
+	 * 
+	 * @return the dump
+	 */
+	String getSummary();
+	
+	/**
+	 * Set every counter and histogram back to zero.
+	 */
+	void reset();
+}
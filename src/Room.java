@@ -1,69 +1,160 @@
+import java.nio.charset.StandardCharsets;
+
 public class Room {
 	private String furnishing;
 	private String adjective;
 	private Item item;
-	private String northDoor;
-	private String southDoor;
+	// The door labels, replaced as a whole when a door changes so that a thread reading
+	// the room while another adds a door sees the old doors or the new ones (see LiveRoomStore)
+	private volatile Doors doors = new Doors(null, null, null, null);
 	
 	// Class constructor to populate the class variables
 	public Room(String furnishing, String adjective, Item item) {
 		this.furnishing = furnishing;
 		this.adjective = adjective;
 		this.item = item;
-		this.northDoor = null;
-		this.southDoor = null;
 	}
 	
 	public void setNorthDoor(String door) {
-		if (Config.getBuggyRoom()) {
-			throw new UnsupportedOperationException("Injected bug for Room class");
+		if (FaultInjector.roomArmed()) {
+			FaultInjector.injectRoom("setNorthDoor");
 		}
-		northDoor = door;
+		Doors d = doors;
+		doors = new Doors(door, d.south, d.east, d.west);
 	}
 	
 	public void setSouthDoor(String door) {
-		if (Config.getBuggyRoom()) {
-			throw new UnsupportedOperationException("Injected bug for Room class");
+		if (FaultInjector.roomArmed()) {
+			FaultInjector.injectRoom("setSouthDoor");
+		}
+		Doors d = doors;
+		doors = new Doors(d.north, door, d.east, d.west);
+	}
+	
+	public void setEastDoor(String door) {
+		if (FaultInjector.roomArmed()) {
+			FaultInjector.injectRoom("setEastDoor");
+		}
+		Doors d = doors;
+		doors = new Doors(d.north, d.south, door, d.west);
+	}
+	
+	public void setWestDoor(String door) {
+		if (FaultInjector.roomArmed()) {
+			FaultInjector.injectRoom("setWestDoor");
+		}
+		Doors d = doors;
+		doors = new Doors(d.north, d.south, d.east, door);
+	}
+	
+	// Return the label of the door in the given direction, or null if there is none
+	public String getDoor(Direction direction) {
+		if (FaultInjector.roomArmed()) {
+			FaultInjector.injectRoom("getDoor");
+		}
+		Doors d = doors;
+		switch(direction) {
+		case NORTH:
+			return d.north;
+		case SOUTH:
+			return d.south;
+		case EAST:
+			return d.east;
+		default:
+			return d.west;
 		}
-		southDoor = door;
 	}
 	
 	// Return the furnishing in the room
 	public String getFurnishing() {
-		if (Config.getBuggyRoom()) {
-			throw new UnsupportedOperationException("Injected bug for Room class");
+		if (FaultInjector.roomArmed()) {
+			FaultInjector.injectRoom("getFurnishing");
 		}
 		return furnishing;
 	}
 
 	// Return the adjective of the room
 	public String getAdjective() {
-		if (Config.getBuggyRoom()) {
-			throw new UnsupportedOperationException("Injected bug for Room class");
+		if (FaultInjector.roomArmed()) {
+			FaultInjector.injectRoom("getAdjective");
 		}
 		return adjective;
 	}
 
 	// Return the item in the room
 	public Item getItem() {
-		if (Config.getBuggyRoom()) {
-			throw new UnsupportedOperationException("Injected bug for Room class");
+		if (FaultInjector.roomArmed()) {
+			FaultInjector.injectRoom("getItem");
 		}
 		return item;
 	}
 	
 	// Print the description for the current room (includes adjective, furnishing, and door description)
 	public String getDescription() {
-		if (Config.getBuggyRoom()) {
-			throw new UnsupportedOperationException("Injected bug for Room class");
+		if (FaultInjector.roomArmed()) {
+			FaultInjector.injectRoom("getDescription");
+		}
+		return describe(doors);
+	}
+	
+	// Return getDescription() encoded as UTF-8, for output that writes bytes directly.
+	// The returned array is shared and must not be modified.
+	public byte[] getDescriptionBytes() {
+		if (FaultInjector.roomArmed()) {
+			FaultInjector.injectRoom("getDescriptionBytes");
+		}
+		Doors d = doors;
+		byte[] bytes = d.descriptionBytes;
+		if(bytes == null) {
+			bytes = describe(d).getBytes(StandardCharsets.UTF_8);
+			d.descriptionBytes = bytes;
 		}
-		String desc = "You see a " + this.adjective + " room.\nIt has a " + this.furnishing + ".\n";
+		return bytes;
+	}
+	
+	// The description of this room with doors d, cached in d
+	private String describe(Doors d) {
+		String desc = d.description;
+		if(desc == null) {
+			desc = describe(adjective, furnishing, d.north, d.south, d.east, d.west);
+			d.description = desc;
+		}
+		return desc;
+	}
+	
+	// Build the description of a room from its parts (a null door is left out)
+	static String describe(String adjective, String furnishing, String northDoor, String southDoor, String eastDoor, String westDoor) {
+		String desc = "You see a " + adjective + " room.\nIt has a " + furnishing + ".\n";
 		if(northDoor != null) {
-			desc += "A " + this.northDoor + " door leads North.\n";
+			desc += "A " + northDoor + " door leads North.\n";
 		}
 		if(southDoor != null) {
-			desc += "A " + this.southDoor + " door leads South.\n";
+			desc += "A " + southDoor + " door leads South.\n";
+		}
+		if(eastDoor != null) {
+			desc += "A " + eastDoor + " door leads East.\n";
+		}
+		if(westDoor != null) {
+			desc += "A " + westDoor + " door leads West.\n";
 		}
 		return desc;
 	}
+	
+	// The door labels of a room (null for no door), with the description they make
+	private static final class Doors {
+		final String north;
+		final String south;
+		final String east;
+		final String west;
+		// Caches of getDescription() and getDescriptionBytes(); threads racing to fill them store equal values
+		volatile String description;
+		volatile byte[] descriptionBytes;
+		
+		Doors(String north, String south, String east, String west) {
+			this.north = north;
+			this.south = south;
+			this.east = east;
+			this.west = west;
+		}
+	}
 }
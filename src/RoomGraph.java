@@ -0,0 +1,133 @@
+import java.util.*;
+
+/**
+ * The doors between the rooms of a World whose map is not a plain north/south chain,
+ * in compressed sparse row form: the exits of room r are entries offsets[r] to
+ * offsets[r+1]-1 of the targets, directions and labelIds arrays. A room has at most one
+ * exit per Direction, so following an exit looks at no more than four entries.
+ * 
+ * A RoomGraph is immutable; build one with a Builder.
+ */
+class RoomGraph {
+	private final int[] offsets;
+	private final int[] targets;
+	private final byte[] directions;
+	private final int[] labelIds;
+	private final String[] labels;
+	
+	private RoomGraph(int[] offsets, int[] targets, byte[] directions, int[] labelIds, String[] labels) {
+		this.offsets = offsets;
+		this.targets = targets;
+		this.directions = directions;
+		this.labelIds = labelIds;
+		this.labels = labels;
+	}
+	
+	// Return the number of rooms
+	int size() {
+		return offsets.length - 1;
+	}
+	
+	/**
+	 * Returns the room reached through the door of room in the given direction.
+	 * 
+	 * @param room      index of the room
+	 * @param direction the direction
+	 * @return index of the room behind the door, or -1 if there is no door that way
+	 */
+	int exit(int room, Direction direction) {
+		int d = direction.ordinal();
+		for(int i = offsets[room]; i < offsets[room + 1]; i++) {
+			if(directions[i] == d) {
+				return targets[i];
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns the label of the door of room in the given direction.
+	 * 
+	 * @param room      index of the room
+	 * @param direction the direction
+	 * @return the label, or null if there is no door that way
+	 */
+	String door(int room, Direction direction) {
+		int d = direction.ordinal();
+		for(int i = offsets[room]; i < offsets[room + 1]; i++) {
+			if(directions[i] == d) {
+				return labels[labelIds[i]];
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Collects the doors of a RoomGraph in any order.
+	 */
+	static class Builder {
+		private int[] from = new int[16];
+		private int[] to = new int[16];
+		private byte[] directions = new byte[16];
+		private int[] labelIds = new int[16];
+		private int count = 0;
+		// Interned door labels; a world typically reuses a handful of them
+		private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		private final ArrayList<String> labels = new ArrayList<String>();
+		
+		/**
+		 * Add a door. The caller makes sure a room has at most one door per direction.
+		 *
+		 * @param room      index of the room the door is in
+		 * @param direction the direction it leads in
+		 * @param target    index of the room behind it
+		 * @param label     the door label
+		 */
+		void addExit(int room, Direction direction, int target, String label) {
+			if(count == from.length) {
+				from = Arrays.copyOf(from, count * 2);
+				to = Arrays.copyOf(to, count * 2);
+				directions = Arrays.copyOf(directions, count * 2);
+				labelIds = Arrays.copyOf(labelIds, count * 2);
+			}
+			Integer id = ids.get(label);
+			if(id == null) {
+				id = labels.size();
+				ids.put(label, id);
+				labels.add(label);
+			}
+			from[count] = room;
+			to[count] = target;
+			directions[count] = (byte) direction.ordinal();
+			labelIds[count] = id;
+			count++;
+		}
+		
+		/**
+		 * Build the graph with a counting sort of the doors by room, in O(rooms + doors).
+		 *
+		 * @param rooms number of rooms; every door must be between rooms below this index
+		 * @return the graph
+		 */
+		RoomGraph build(int rooms) {
+			int[] offsets = new int[rooms + 1];
+			for(int i = 0; i < count; i++) {
+				offsets[from[i] + 1]++;
+			}
+			for(int r = 0; r < rooms; r++) {
+				offsets[r + 1] += offsets[r];
+			}
+			int[] next = Arrays.copyOf(offsets, rooms);
+			int[] sortedTargets = new int[count];
+			byte[] sortedDirections = new byte[count];
+			int[] sortedLabels = new int[count];
+			for(int i = 0; i < count; i++) {
+				int slot = next[from[i]]++;
+				sortedTargets[slot] = to[i];
+				sortedDirections[slot] = directions[i];
+				sortedLabels[slot] = labelIds[i];
+			}
+			return new RoomGraph(offsets, sortedTargets, sortedDirections, sortedLabels, labels.toArray(new String[0]));
+		}
+	}
+}
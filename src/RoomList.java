@@ -0,0 +1,78 @@
+import java.util.*;
+
+/**
+ * The default RoomStore. Holds on to the Room objects it is given, so getCurrentRoom()
+ * returns the very object that was added.
+ */
+class RoomList extends RoomStore {
+	private ArrayList<Room> rooms = new ArrayList<Room>();
+	// Position of each room in rooms. Rooms are matched by identity, as Room does not override equals.
+	private IdentityHashMap<Room, Integer> roomIndex = new IdentityHashMap<Room, Integer>();
+	// Case-folded adjectives and furnishings of every room, so uniqueness checks need not scan the list
+	private HashSet<String> adjectives = new HashSet<String>();
+	private HashSet<String> furnishings = new HashSet<String>();
+	
+	int size() {
+		return rooms.size();
+	}
+	
+	Room get(int index) {
+		return rooms.get(index);
+	}
+	
+	int indexOf(Room room) {
+		Integer index = roomIndex.get(room);
+		if(index == null) {
+			return -1;
+		}
+		return index;
+	}
+	
+	boolean containsAdjective(String adjective) {
+		return adjective != null && adjectives.contains(foldCase(adjective));
+	}
+	
+	boolean containsFurnishing(String furnishing) {
+		return furnishing != null && furnishings.contains(foldCase(furnishing));
+	}
+	
+	void add(Room room, String southDoor) {
+		roomIndex.put(room, rooms.size());
+		rooms.add(room);
+		// A null name never matches another room, so there is nothing to index.
+		String adjective = room.getAdjective();
+		if(adjective != null) {
+			adjectives.add(foldCase(adjective));
+		}
+		String furnishing = room.getFurnishing();
+		if(furnishing != null) {
+			furnishings.add(foldCase(furnishing));
+		}
+	}
+	
+	void setNorthDoor(int index, String door) {
+		rooms.get(index).setNorthDoor(door);
+	}
+	
+	void setDoor(int index, Direction direction, String door) {
+		Room room = rooms.get(index);
+		switch(direction) {
+		case NORTH:
+			room.setNorthDoor(door);
+			break;
+		case SOUTH:
+			room.setSouthDoor(door);
+			break;
+		case EAST:
+			room.setEastDoor(door);
+			break;
+		default:
+			room.setWestDoor(door);
+			break;
+		}
+	}
+	
+	void ensureCapacity(int minCapacity) {
+		rooms.ensureCapacity(minCapacity);
+	}
+}
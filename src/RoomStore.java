@@ -0,0 +1,145 @@
+/**
+ * Backing storage for the rooms of a CoffeeMakerQuestImpl, ordered from the first
+ * (southern-most) room northwards. Rooms are only ever appended at the north end;
+ * which rooms their doors lead to is up to the World.
+ */
+abstract class RoomStore {
+	
+	/**
+	 * Returns the number of rooms in the store.
+	 * 
+	 * @return number of rooms
+	 */
+	abstract int size();
+	
+	/**
+	 * Returns the room at the given position.
+	 * 
+	 * @param index position of the room, 0 being the first room
+	 * @return the room
+	 */
+	abstract Room get(int index);
+	
+	/**
+	 * Returns the position of room in the store.
+	 * 
+	 * @param room the room to look up
+	 * @return position of the room, or -1 if it is not in the store
+	 */
+	abstract int indexOf(Room room);
+	
+	/**
+	 * Whether a room in the store has the given adjective, ignoring case (FUN-UNIQ-ROOM).
+	 * 
+	 * @param adjective the adjective, may be null
+	 * @return true if some room has the adjective, false otherwise or if adjective is null
+	 */
+	abstract boolean containsAdjective(String adjective);
+	
+	/**
+	 * Whether a room in the store has the given furnishing, ignoring case (FUN-UNIQ-ROOM-FURNISHING).
+	 * 
+	 * @param furnishing the furnishing, may be null
+	 * @return true if some room has the furnishing, false otherwise or if furnishing is null
+	 */
+	abstract boolean containsFurnishing(String furnishing);
+	
+	/**
+	 * Appends room at the north end. The south door of room has already been labeled
+	 * southDoor by the caller (null for the first room).
+	 * 
+	 * @param room      the room to append
+	 * @param southDoor label of the south door of room
+	 */
+	abstract void add(Room room, String southDoor);
+	
+	/**
+	 * Label the north door of the room at the given position.
+	 * 
+	 * @param index position of the room
+	 * @param door  the door label
+	 */
+	abstract void setNorthDoor(int index, String door);
+	
+	/**
+	 * Label the door in the given direction of the room at the given position, for
+	 * worlds that are not a plain north/south chain.
+	 * 
+	 * @param index     position of the room
+	 * @param direction the direction of the door
+	 * @param door      the door label
+	 */
+	abstract void setDoor(int index, Direction direction, String door);
+	
+	/**
+	 * Returns the World.contentHash of the rooms of a store that does not start out
+	 * empty, such as a hash of the seed of a ProceduralRoomStore, or the hash of the
+	 * world a MappedRoomStore was written from.
+	 * 
+	 * @return the hash, unused for a store that starts out empty
+	 */
+	long contentHash() {
+		return 0;
+	}
+	
+	/**
+	 * Whether rooms can be added while other threads read the store, as in a
+	 * LiveRoomStore. A World over such a store stays a north/south chain.
+	 * 
+	 * @return true if readers may run concurrently with add and setNorthDoor
+	 */
+	boolean isLive() {
+		return false;
+	}
+	
+	/**
+	 * Make room for at least minCapacity rooms without further resizing.
+	 * 
+	 * @param minCapacity the desired capacity
+	 */
+	void ensureCapacity(int minCapacity) { }
+	
+	/**
+	 * Returns a key such that two strings have equal keys exactly when they are
+	 * equalsIgnoreCase to each other. Each character is folded the same way
+	 * String.equalsIgnoreCase compares it, so the key is locale-independent.
+	 * 
+	 * @param s the string to fold, may be null
+	 * @return the folded key, or null if s is null
+	 */
+	static String foldCase(String s) {
+		if(s == null) {
+			return null;
+		}
+		char[] folded = null;
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			char f = foldCase(c);
+			if(f != c) {
+				if(folded == null) {
+					folded = s.toCharArray();
+				}
+				folded[i] = f;
+			}
+		}
+		return folded == null ? s : new String(folded);
+	}
+	
+	/**
+	 * Returns the hash code of foldCase(s) without building the folded string.
+	 * 
+	 * @param s the string to hash
+	 * @return foldCase(s).hashCode()
+	 */
+	static int foldedHashCode(String s) {
+		int h = 0;
+		for(int i = 0; i < s.length(); i++) {
+			h = 31 * h + foldCase(s.charAt(i));
+		}
+		return h;
+	}
+	
+	private static char foldCase(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+}
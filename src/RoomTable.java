@@ -0,0 +1,290 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A struct-of-arrays RoomStore for large worlds. Instead of keeping a Room object per
+ * room, each room is a row across a few columns: the adjective and furnishing, interned
+ * ids of the door labels in each Direction, and the Item ordinal. The uniqueness indexes
+ * are open-addressing tables of row numbers rather than sets of case-folded copies of
+ * every name. Room objects handed out by get() are lightweight views onto a row, created
+ * on demand.
+ * 
+ * The Room objects passed to add() are not retained. A room that is not a view of this
+ * table is looked up by content instead: it is found if a row has the same adjective,
+ * furnishing and item.
+ */
+class RoomTable extends RoomStore {
+	private static final Item[] ITEMS = Item.values();
+	private static final int NO_LABEL = -1;
+	
+	private int size = 0;
+	// Adjectives and furnishings are unique per room, so interning them would save nothing.
+	private String[] adjectives = new String[16];
+	private String[] furnishings = new String[16];
+	private int[] northDoors = new int[16];
+	private int[] southDoors = new int[16];
+	private int[] eastDoors = new int[16];
+	private int[] westDoors = new int[16];
+	private byte[] items = new byte[16];
+	
+	// Interned door labels; a world typically reuses a handful of them.
+	private HashMap<String, Integer> labelIds = new HashMap<String, Integer>();
+	private ArrayList<String> labels = new ArrayList<String>();
+	
+	// Open-addressing hash tables of row + 1 (0 is an empty slot), keyed by the case-folded
+	// adjective and furnishing of the row. Kept at most half full.
+	private int[] adjectiveIndex = new int[32];
+	private int[] furnishingIndex = new int[32];
+	
+	int size() {
+		return size;
+	}
+	
+	Room get(int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return new View(this, index);
+	}
+	
+	int indexOf(Room room) {
+		if(room instanceof View) {
+			View view = (View) room;
+			return view.table == this ? view.index : -1;
+		}
+		String adjective = room.getAdjective();
+		if(adjective == null) {
+			return -1;
+		}
+		int row = find(adjectiveIndex, adjectives, adjective);
+		if(row < 0 || !adjective.equals(adjectives[row]) || !Objects.equals(furnishings[row], room.getFurnishing()) || itemAt(row) != room.getItem()) {
+			return -1;
+		}
+		return row;
+	}
+	
+	boolean containsAdjective(String adjective) {
+		return adjective != null && find(adjectiveIndex, adjectives, adjective) >= 0;
+	}
+	
+	boolean containsFurnishing(String furnishing) {
+		return furnishing != null && find(furnishingIndex, furnishings, furnishing) >= 0;
+	}
+	
+	void add(Room room, String southDoor) {
+		ensureCapacity(size + 1);
+		Item item = room.getItem();
+		adjectives[size] = room.getAdjective();
+		furnishings[size] = room.getFurnishing();
+		northDoors[size] = NO_LABEL;
+		southDoors[size] = intern(southDoor);
+		eastDoors[size] = NO_LABEL;
+		westDoors[size] = NO_LABEL;
+		items[size] = (byte) (item == null ? -1 : item.ordinal());
+		size++;
+		if(size * 2 > adjectiveIndex.length) {
+			adjectiveIndex = new int[adjectiveIndex.length * 2];
+			furnishingIndex = new int[furnishingIndex.length * 2];
+			for(int row = 0; row < size - 1; row++) {
+				insert(row);
+			}
+		}
+		insert(size - 1);
+	}
+	
+	void setNorthDoor(int index, String door) {
+		if (FaultInjector.roomArmed()) {
+			FaultInjector.injectRoom("setNorthDoor");
+		}
+		northDoors[index] = intern(door);
+	}
+	
+	void setDoor(int index, Direction direction, String door) {
+		if (FaultInjector.roomArmed()) {
+			FaultInjector.injectRoom("setDoor");
+		}
+		doors(direction)[index] = intern(door);
+	}
+	
+	// The door label column for the given direction
+	private int[] doors(Direction direction) {
+		switch(direction) {
+		case NORTH:
+			return northDoors;
+		case SOUTH:
+			return southDoors;
+		case EAST:
+			return eastDoors;
+		default:
+			return westDoors;
+		}
+	}
+	
+	void ensureCapacity(int minCapacity) {
+		if(minCapacity <= adjectives.length) {
+			return;
+		}
+		int capacity = Math.max(minCapacity, adjectives.length + (adjectives.length >> 1));
+		adjectives = Arrays.copyOf(adjectives, capacity);
+		furnishings = Arrays.copyOf(furnishings, capacity);
+		northDoors = Arrays.copyOf(northDoors, capacity);
+		southDoors = Arrays.copyOf(southDoors, capacity);
+		eastDoors = Arrays.copyOf(eastDoors, capacity);
+		westDoors = Arrays.copyOf(westDoors, capacity);
+		items = Arrays.copyOf(items, capacity);
+	}
+	
+	private void insert(int row) {
+		insert(adjectiveIndex, adjectives[row], row);
+		insert(furnishingIndex, furnishings[row], row);
+	}
+	
+	private static void insert(int[] index, String key, int row) {
+		// A null name never matches another room, so there is nothing to index.
+		if(key == null) {
+			return;
+		}
+		int mask = index.length - 1;
+		int slot = foldedHashCode(key) & mask;
+		while(index[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		index[slot] = row + 1;
+	}
+	
+	// Returns the row whose column value is equalsIgnoreCase to key, or -1
+	private static int find(int[] index, String[] column, String key) {
+		int mask = index.length - 1;
+		int slot = foldedHashCode(key) & mask;
+		while(index[slot] != 0) {
+			int row = index[slot] - 1;
+			if(key.equalsIgnoreCase(column[row])) {
+				return row;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+	
+	private int intern(String label) {
+		if(label == null) {
+			return NO_LABEL;
+		}
+		Integer id = labelIds.get(label);
+		if(id == null) {
+			id = labels.size();
+			labels.add(label);
+			labelIds.put(label, id);
+		}
+		return id;
+	}
+	
+	private String label(int id) {
+		return id == NO_LABEL ? null : labels.get(id);
+	}
+	
+	private Item itemAt(int row) {
+		return items[row] < 0 ? null : ITEMS[items[row]];
+	}
+	
+	/**
+	 * A Room backed by a row of a RoomTable. Two views are equal when they show the
+	 * same row of the same table.
+	 */
+	static class View extends Room {
+		private final RoomTable table;
+		private final int index;
+		
+		View(RoomTable table, int index) {
+			super(null, null, null);
+			this.table = table;
+			this.index = index;
+		}
+		
+		public void setNorthDoor(String door) {
+			table.setNorthDoor(index, door);
+		}
+		
+		public void setSouthDoor(String door) {
+			if (FaultInjector.roomArmed()) {
+				FaultInjector.injectRoom("setSouthDoor");
+			}
+			table.southDoors[index] = table.intern(door);
+		}
+		
+		public void setEastDoor(String door) {
+			if (FaultInjector.roomArmed()) {
+				FaultInjector.injectRoom("setEastDoor");
+			}
+			table.eastDoors[index] = table.intern(door);
+		}
+		
+		public void setWestDoor(String door) {
+			if (FaultInjector.roomArmed()) {
+				FaultInjector.injectRoom("setWestDoor");
+			}
+			table.westDoors[index] = table.intern(door);
+		}
+		
+		public String getDoor(Direction direction) {
+			if (FaultInjector.roomArmed()) {
+				FaultInjector.injectRoom("getDoor");
+			}
+			return table.label(table.doors(direction)[index]);
+		}
+		
+		public String getFurnishing() {
+			if (FaultInjector.roomArmed()) {
+				FaultInjector.injectRoom("getFurnishing");
+			}
+			return table.furnishings[index];
+		}
+		
+		public String getAdjective() {
+			if (FaultInjector.roomArmed()) {
+				FaultInjector.injectRoom("getAdjective");
+			}
+			return table.adjectives[index];
+		}
+		
+		public Item getItem() {
+			if (FaultInjector.roomArmed()) {
+				FaultInjector.injectRoom("getItem");
+			}
+			return table.itemAt(index);
+		}
+		
+		public String getDescription() {
+			if (FaultInjector.roomArmed()) {
+				FaultInjector.injectRoom("getDescription");
+			}
+			return describe();
+		}
+		
+		public byte[] getDescriptionBytes() {
+			if (FaultInjector.roomArmed()) {
+				FaultInjector.injectRoom("getDescriptionBytes");
+			}
+			// Views are short-lived, so there is nothing worth caching here.
+			return describe().getBytes(StandardCharsets.UTF_8);
+		}
+		
+		private String describe() {
+			return Room.describe(table.adjectives[index], table.furnishings[index],
+					table.label(table.northDoors[index]), table.label(table.southDoors[index]),
+					table.label(table.eastDoors[index]), table.label(table.westDoors[index]));
+		}
+		
+		public boolean equals(Object o) {
+			if(!(o instanceof View)) {
+				return false;
+			}
+			View other = (View) o;
+			return table == other.table && index == other.index;
+		}
+		
+		public int hashCode() {
+			return System.identityHashCode(table) * 31 + index;
+		}
+	}
+}
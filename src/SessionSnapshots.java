@@ -0,0 +1,127 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Saves and restores game sessions in bulk. Each session is stored as the long
+ * returned by CoffeeMakerQuestImpl.snapshot(); the world is not stored, only its
+ * content hash, which must match when the sessions are restored.
+ * 
+ * File layout (little-endian): magic "CMQS", format version, world content hash,
+ * number of rooms in the world, number of sessions, padding up to 32 bytes, then one
+ * long per session.
+ * The file is written and read through memory mappings, so millions of sessions take
+ * a few tens of milliseconds.
+ */
+class SessionSnapshots {
+	static final int MAGIC = 0x53514d43;
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 32;
+	
+	// Sessions per mapping; a single mapping cannot exceed 2 GiB
+	private static final int SESSIONS_PER_MAPPING = 1 << 24;
+	
+	/**
+	 * Write the state of every session to file, replacing its contents.
+	 * 
+	 * @param file     the file to write
+	 * @param world    the world the sessions are played in
+	 * @param sessions the sessions to save
+	 * @throws IOException if the file cannot be written
+	 */
+	static void save(File file, World world, List<CoffeeMakerQuestImpl> sessions) throws IOException {
+		long[] states = new long[sessions.size()];
+		for(int i = 0; i < states.length; i++) {
+			states[i] = sessions.get(i).snapshot();
+		}
+		write(file, world, states);
+	}
+	
+	/**
+	 * Restore the sessions saved by save(). Each session gets a new Player.
+	 * 
+	 * @param file  the file to read
+	 * @param world the world the sessions were played in
+	 * @return the restored sessions, in the order they were saved
+	 * @throws IOException if the file cannot be read, is not a snapshot file or was saved in another world
+	 */
+	static List<CoffeeMakerQuestImpl> load(File file, World world) throws IOException {
+		long[] states = read(file, world);
+		List<CoffeeMakerQuestImpl> sessions = new ArrayList<CoffeeMakerQuestImpl>(states.length);
+		for(long state : states) {
+			CoffeeMakerQuestImpl session = new CoffeeMakerQuestImpl(world);
+			session.setPlayer(new Player());
+			session.restore(state);
+			sessions.add(session);
+		}
+		return sessions;
+	}
+	
+	/**
+	 * Write session states to file, replacing its contents, and force them to the device.
+	 * 
+	 * @param file   the file to write
+	 * @param world  the world the sessions are played in
+	 * @param states values returned by CoffeeMakerQuestImpl.snapshot()
+	 * @throws IOException if the file cannot be written
+	 */
+	static void write(File file, World world, long[] states) throws IOException {
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+			raf.setLength(0);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putLong(world.contentHash()).putInt(world.size()).putInt(states.length);
+			header.clear();
+			while(header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+			for(int from = 0; from < states.length; from += SESSIONS_PER_MAPPING) {
+				int count = Math.min(SESSIONS_PER_MAPPING, states.length - from);
+				MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + (long) from * 8, (long) count * 8);
+				map.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().put(states, from, count);
+				map.force();
+			}
+		}
+	}
+	
+	/**
+	 * Read the session states written by write().
+	 * 
+	 * @param file  the file to read
+	 * @param world the world the sessions were played in
+	 * @return the session states
+	 * @throws IOException if the file cannot be read, is not a snapshot file or was saved in another world
+	 */
+	static long[] read(File file, World world) throws IOException {
+		try(RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			while(header.hasRemaining()) {
+				if(channel.read(header, header.position()) < 0) {
+					throw new IOException(file + " is not a session snapshot file");
+				}
+			}
+			header.flip();
+			if(header.getInt() != MAGIC) {
+				throw new IOException(file + " is not a session snapshot file");
+			}
+			int version = header.getInt();
+			if(version != VERSION) {
+				throw new IOException(file + " has unsupported snapshot version " + version);
+			}
+			if(header.getLong() != world.contentHash() || header.getInt() != world.size()) {
+				throw new IOException(file + " was saved in a different world");
+			}
+			int count = header.getInt();
+			if(count < 0 || channel.size() < HEADER_BYTES + (long) count * 8) {
+				throw new IOException(file + " is truncated");
+			}
+			long[] states = new long[count];
+			for(int from = 0; from < count; from += SESSIONS_PER_MAPPING) {
+				int n = Math.min(SESSIONS_PER_MAPPING, count - from);
+				MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + (long) from * 8, (long) n * 8);
+				map.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(states, from, n);
+			}
+			return states;
+		}
+	}
+}
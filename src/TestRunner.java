@@ -1,14 +1,35 @@
-import java.util.ArrayList;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.junit.experimental.ParallelComputer;
 import org.junit.runner.*;
 import org.junit.runner.notification.*;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.*;
 
 public class TestRunner {
+	// Number of slowest tests highlighted in the timing report
+	private static final int SLOWEST = 5;
+	
 	public static void main(String[] args) {
 
-		if (args.length > 0 && args[0].equals("buggy")) {
-			Config.setBuggyCoffeeMakerQuest(true);
-			System.out.println("TESTING BUGGY IMPLEMENTATION\n");
+		boolean parallel = false;
+		long budgetMillis = 0;
+		for (String arg : args) {
+			if (arg.equals("buggy")) {
+				Config.setBuggyCoffeeMakerQuest(true);
+				System.out.println("TESTING BUGGY IMPLEMENTATION\n");
+			} else if (arg.equals("parallel")) {
+				parallel = true;
+			} else if (arg.startsWith("budget=")) {
+				// Tests taking longer than this many milliseconds fail
+				budgetMillis = Long.parseLong(arg.substring("budget=".length()));
+			}
+		}
+		
+		if (parallel) {
+			// Each test thread gets its own bug injection flags
+			Config.setThreadScoped(true);
 		}
 		
 		ArrayList<Class> classesToTest = new ArrayList<Class>();
@@ -18,10 +39,19 @@ public class TestRunner {
 		classesToTest.add(CoffeeMakerQuestTest.class);
 
 		// For all test classes added, loop through and use JUnit
-		// to run them.
+		// to run them. In parallel mode, the methods of each class
+		// run concurrently.
+
+		Computer computer = parallel ? new ParallelComputer(false, true) : new Computer();
+		if (budgetMillis > 0) {
+			computer = new BudgetComputer(computer, budgetMillis);
+		}
+		TestTimer timer = new TestTimer();
+		JUnitCore core = new JUnitCore();
+		core.addListener(timer);
 
 		for (Class c : classesToTest) {
-			Result r = JUnitCore.runClasses(c);
+			Result r = core.run(computer, c);
 
 			// Print out any failures for this class.
 
@@ -42,6 +72,11 @@ public class TestRunner {
 
 		}
 
+		// Print the wall time of every test, slowest first. Tests that
+		// went over the time budget have already failed above.
+
+		timer.report(budgetMillis);
+
 		// After completion, notify user if all tests passed or any failed.
 
 		if (anyFailures) {
@@ -50,4 +85,94 @@ public class TestRunner {
 			System.out.println("\nALL TESTS PASSED");
 		}
 	}
+	
+	/**
+	 * Runs test classes like another Computer, but fails each test that takes longer than
+	 * the budget, including its @Before and @After methods. Test classes are run by the
+	 * plain JUnit 4 runner.
+	 */
+	static class BudgetComputer extends Computer {
+		private final Computer computer;
+		private final long budgetMillis;
+		
+		BudgetComputer(Computer computer, long budgetMillis) {
+			this.computer = computer;
+			this.budgetMillis = budgetMillis;
+		}
+		
+		public Runner getSuite(RunnerBuilder builder, Class<?>[] classes) throws InitializationError {
+			return computer.getSuite(new RunnerBuilder() {
+				public Runner runnerForClass(Class<?> testClass) throws Throwable {
+					return new BudgetRunner(testClass, budgetMillis);
+				}
+			}, classes);
+		}
+	}
+	
+	/**
+	 * A JUnit 4 runner that fails a test which went over the time budget. The test runs to
+	 * the end; a failure of its own is reported instead.
+	 */
+	static class BudgetRunner extends BlockJUnit4ClassRunner {
+		private final long budgetMillis;
+		
+		BudgetRunner(Class<?> testClass, long budgetMillis) throws InitializationError {
+			super(testClass);
+			this.budgetMillis = budgetMillis;
+		}
+		
+		protected Statement methodBlock(FrameworkMethod method) {
+			Statement test = super.methodBlock(method);
+			return new Statement() {
+				public void evaluate() throws Throwable {
+					long start = System.nanoTime();
+					test.evaluate();
+					long millis = (System.nanoTime() - start) / 1000000;
+					if (millis > budgetMillis) {
+						throw new AssertionError(method.getName() + " took " + millis
+								+ " ms, over the budget of " + budgetMillis + " ms");
+					}
+				}
+			};
+		}
+	}
+	
+	/**
+	 * Records the wall time of each test. Safe to use when tests run in parallel.
+	 */
+	static class TestTimer extends RunListener {
+		private final Map<Description, Long> started = new ConcurrentHashMap<Description, Long>();
+		private final Map<Description, Long> elapsed = new ConcurrentHashMap<Description, Long>();
+		
+		public void testStarted(Description description) {
+			started.put(description, System.nanoTime());
+		}
+		
+		public void testFinished(Description description) {
+			Long start = started.remove(description);
+			if (start != null) {
+				elapsed.put(description, System.nanoTime() - start);
+			}
+		}
+		
+		/**
+		 * Print the time taken by each test, slowest first, highlighting the slowest
+		 * ones and those over the budget.
+		 * 
+		 * @param budgetMillis time budget per test in milliseconds, or 0 for none
+		 */
+		void report(long budgetMillis) {
+			List<Map.Entry<Description, Long>> times = new ArrayList<Map.Entry<Description, Long>>(elapsed.entrySet());
+			times.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+			System.out.println("\nTEST TIMES (slowest first)");
+			for (int i = 0; i < times.size(); i++) {
+				double millis = times.get(i).getValue() / 1e6;
+				String mark = i < SLOWEST ? "  <-- SLOW" : "";
+				if (budgetMillis > 0 && millis > budgetMillis) {
+					mark = "  <-- OVER BUDGET OF " + budgetMillis + " ms";
+				}
+				System.out.println(String.format("%10.1f ms  %s%s", millis, times.get(i).getKey(), mark));
+			}
+		}
+	}
 }
@@ -0,0 +1,173 @@
+import java.util.Arrays;
+
+/**
+ * Answers how far a player is from winning: the fewest commands that collect the
+ * missing items and drink. A World keeps one up to date as rooms are added, by
+ * remembering the positions of every coffee, cream and sugar in order.
+ * 
+ * Along the line of rooms, the best walk only ever needs the nearest room holding
+ * each missing item on either side of the player, so a query looks at no more than
+ * two positions per item (found by binary search) and 8 combinations of them:
+ * O(log n) in the number of rooms.
+ */
+class WinPathOracle {
+	// Items a player needs, in the order of their inventory bits
+	private static final int[] ITEM_BITS = {Player.COFFEE, Player.CREAM, Player.SUGAR};
+	
+	// positions[i] holds, in increasing order, the rooms whose item has bit ITEM_BITS[i]
+	private final int[][] positions = new int[3][16];
+	private final int[] counts = new int[3];
+	
+	/**
+	 * Record the room at index, which must come north of every room recorded before.
+	 * 
+	 * @param index position of the room in the world
+	 * @param item  the item in the room, may be null
+	 */
+	void roomAdded(int index, Item item) {
+		int bit = item == null ? 0 : Player.mask(item);
+		for(int i = 0; i < ITEM_BITS.length; i++) {
+			if(ITEM_BITS[i] == bit) {
+				if(counts[i] == positions[i].length) {
+					positions[i] = Arrays.copyOf(positions[i], counts[i] * 2);
+				}
+				positions[i][counts[i]++] = index;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the fewest commands that win the game from room with the given inventory:
+	 * the moves, one "L" in each room holding a missing item, and the final "D".
+	 * 
+	 * @param room      index of the player's room
+	 * @param inventory inventory mask made of Player.COFFEE, Player.CREAM and Player.SUGAR
+	 * @return the number of commands, or -1 if some missing item is nowhere in the world
+	 */
+	int commandsToWin(int room, int inventory) {
+		int[] best = bestRooms(room, inventory);
+		if(best == null) {
+			return -1;
+		}
+		return walkLength(room, best) + Integer.bitCount(7 & ~inventory) + 1;
+	}
+	
+	/**
+	 * Returns a shortest winning script for CoffeeMakerQuestImpl.processCommands, such as
+	 * "L N*2 L N*3 L D". It has commandsToWin(room, inventory) commands when the
+	 * repeats are counted out.
+	 * 
+	 * @param room      index of the player's room
+	 * @param inventory inventory mask made of Player.COFFEE, Player.CREAM and Player.SUGAR
+	 * @return the script, or null if some missing item is nowhere in the world
+	 */
+	String winScript(int room, int inventory) {
+		int[] best = bestRooms(room, inventory);
+		if(best == null) {
+			return null;
+		}
+		int low = room;
+		int high = room;
+		for(int position : best) {
+			low = Math.min(low, position);
+			high = Math.max(high, position);
+		}
+		StringBuilder script = new StringBuilder();
+		int at = room;
+		if(room - low <= high - room) {
+			at = walk(script, at, low, best);
+			walk(script, at, high, best);
+		}
+		else {
+			at = walk(script, at, high, best);
+			walk(script, at, low, best);
+		}
+		return script.append('D').toString();
+	}
+	
+	// Rooms of the missing items giving the shortest walk from room, or null if an item is missing from the world
+	private int[] bestRooms(int room, int inventory) {
+		int missing = Integer.bitCount(7 & ~inventory);
+		int[][] candidates = new int[missing][];
+		int n = 0;
+		for(int i = 0; i < ITEM_BITS.length; i++) {
+			if((inventory & ITEM_BITS[i]) != 0) {
+				continue;
+			}
+			if(counts[i] == 0) {
+				return null;
+			}
+			candidates[n++] = nearest(i, room);
+		}
+		int[] best = new int[missing];
+		int[] chosen = new int[missing];
+		int bestLength = Integer.MAX_VALUE;
+		for(int combo = 0; combo < 1 << missing; combo++) {
+			for(int i = 0; i < missing; i++) {
+				chosen[i] = candidates[i][(combo >> i) & 1];
+			}
+			int length = walkLength(room, chosen);
+			if(length < bestLength) {
+				bestLength = length;
+				System.arraycopy(chosen, 0, best, 0, missing);
+			}
+		}
+		return best;
+	}
+	
+	// The nearest rooms holding item i at or south of room and at or north of it (the same room twice if only one side has any)
+	private int[] nearest(int i, int room) {
+		int index = Arrays.binarySearch(positions[i], 0, counts[i], room);
+		if(index >= 0) {
+			return new int[] {room, room};
+		}
+		int north = -index - 1;
+		int south = north - 1;
+		int southRoom = positions[i][Math.max(south, 0)];
+		int northRoom = positions[i][Math.min(north, counts[i] - 1)];
+		return new int[] {south >= 0 ? southRoom : northRoom, north < counts[i] ? northRoom : southRoom};
+	}
+	
+	// Moves needed to visit every room in rooms starting from room: cover the span, turning back once
+	private static int walkLength(int room, int[] rooms) {
+		int low = room;
+		int high = room;
+		for(int position : rooms) {
+			low = Math.min(low, position);
+			high = Math.max(high, position);
+		}
+		return high - low + Math.min(room - low, high - room);
+	}
+	
+	// Append the moves from at towards target, looking in every room of rooms on the way; returns the last room looked in
+	private static int walk(StringBuilder script, int at, int target, int[] rooms) {
+		int low = Math.min(at, target);
+		int high = Math.max(at, target);
+		while(true) {
+			int next = -1;
+			for(int i = 0; i < rooms.length; i++) {
+				if(rooms[i] >= low && rooms[i] <= high && (next < 0 || Math.abs(rooms[i] - at) < Math.abs(rooms[next] - at))) {
+					next = i;
+				}
+			}
+			if(next < 0) {
+				return at;
+			}
+			move(script, rooms[next] - at);
+			script.append("L ");
+			at = rooms[next];
+			rooms[next] = -1;
+		}
+	}
+	
+	private static void move(StringBuilder script, int steps) {
+		if(steps == 0) {
+			return;
+		}
+		script.append(steps > 0 ? 'N' : 'S');
+		if(Math.abs(steps) > 1) {
+			script.append('*').append(Math.abs(steps));
+		}
+		script.append(' ');
+	}
+}
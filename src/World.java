@@ -0,0 +1,429 @@
+import java.util.*;
+import java.util.function.IntFunction;
+
+/**
+ * The rooms of a game, shared by every session played in it. A World is built with
+ * addFirstRoom/addRoomAtNorth/addRoomsAtNorth (see CoffeeMakerQuestImpl for their
+ * contracts) and can then be frozen, after which it is immutable and may be read by
+ * any number of sessions on any number of threads.
+ * 
+ * Built that way, the world is a chain: north and south lead to the next and previous
+ * rooms, and a move is just index arithmetic. Rooms added with addRoom and doors added
+ * with connect make it a graph world instead, with doors in any Direction between any
+ * rooms, held in a RoomGraph. Either way exit() finds where a door leads in O(1).
+ * 
+ * A world over a live store (see LiveRoomStore) is the exception to freezing: one
+ * thread can keep adding rooms at north while sessions play in it.
+ */
+class World {
+	private final RoomStore rooms;
+	// Whether sessions may play while rooms are added; see RoomStore.isLive
+	private final boolean live;
+	private volatile boolean frozen = false;
+	// Hash of the rooms and doors added so far; see contentHash(). Volatile for sessions
+	// reading it while rooms are added to a live world.
+	private volatile long contentHash = FNV_OFFSET;
+	// Where the items are, for hints and bots
+	private final WinPathOracle winPaths;
+	// The doors of a graph world, or null while the world is a chain
+	private RoomGraph.Builder doors = null;
+	// Bit d of exitMasks[r] is set if room r has a door in the Direction with ordinal d (graph worlds only)
+	private byte[] exitMasks;
+	// Built from doors when first needed after a change
+	private RoomGraph graph = null;
+	
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	
+	World() {
+		this(new RoomList());
+	}
+	
+	/**
+	 * Create a world whose rooms are kept in the given store. A store that already holds
+	 * rooms, such as a ProceduralRoomStore, makes a world that is frozen from the start
+	 * and has no win-path oracle.
+	 * 
+	 * @param rooms an empty room store, or a read-only store of a north/south chain
+	 */
+	World(RoomStore rooms) {
+		this.rooms = rooms;
+		live = rooms.isLive();
+		if(rooms.size() == 0) {
+			winPaths = new WinPathOracle();
+		}
+		else {
+			winPaths = null;
+			contentHash = rooms.contentHash();
+			frozen = true;
+		}
+	}
+	
+	/**
+	 * Make the world immutable. Afterwards no room can be added.
+	 */
+	void freeze() {
+		if(doors != null) {
+			graph();
+		}
+		frozen = true;
+	}
+	
+	boolean isFrozen() {
+		return frozen;
+	}
+	
+	int size() {
+		return rooms.size();
+	}
+	
+	Room get(int index) {
+		return rooms.get(index);
+	}
+	
+	/**
+	 * Returns a 64-bit hash of the world as it was built: the adjective, furnishing, item
+	 * and door labels of every room, in order. Two worlds built from the same rooms have
+	 * the same hash whether the rooms were added one by one or in batches, so the hash
+	 * can stand in for the world in saved sessions (see SessionSnapshots).
+	 * 
+	 * @return the content hash
+	 */
+	long contentHash() {
+		return contentHash;
+	}
+	
+	/**
+	 * Returns the inventory bit (Player.COFFEE, CREAM or SUGAR, or 0) of the item in each
+	 * room, for code that plays many games without going through Room objects.
+	 * 
+	 * @return a new array with one entry per room
+	 */
+	byte[] itemMasks() {
+		byte[] masks = new byte[rooms.size()];
+		for(int i = 0; i < masks.length; i++) {
+			Item item = rooms.get(i).getItem();
+			masks[i] = (byte) (item == null ? 0 : Player.mask(item));
+		}
+		return masks;
+	}
+	
+	/**
+	 * Returns the oracle for the shortest ways to win in this world. It is kept up to
+	 * date as rooms are added. The oracle only knows about chains it saw being built.
+	 * The oracle of a live world changes while sessions play, so it is only handed out
+	 * once the world is frozen.
+	 * 
+	 * @return the oracle, or null if this is a graph world, its rooms came with its store or it is live and not frozen
+	 */
+	WinPathOracle getWinPathOracle() {
+		// Reading frozen first makes the updates made before freezing visible
+		if(live && !frozen) {
+			return null;
+		}
+		return doors == null ? winPaths : null;
+	}
+	
+	/**
+	 * Whether this world is still a plain north/south chain, i.e. addRoom and connect
+	 * were never called.
+	 * 
+	 * @return true for a chain world, false for a graph world
+	 */
+	boolean isChain() {
+		return doors == null;
+	}
+	
+	/**
+	 * Returns the room reached through the door of room in the given direction. In a
+	 * chain world north and south lead to the next and previous rooms and there are no
+	 * east or west doors.
+	 * 
+	 * @param room      index of the room
+	 * @param direction the direction to go
+	 * @return index of the room behind the door, or -1 if there is no door that way
+	 */
+	int exit(int room, Direction direction) {
+		if(doors == null) {
+			switch(direction) {
+			case NORTH:
+				if(live) {
+					// The north door is labeled only once the room behind it is published
+					return rooms.get(room).getDoor(Direction.NORTH) != null ? room + 1 : -1;
+				}
+				return room < rooms.size() - 1 ? room + 1 : -1;
+			case SOUTH:
+				return room > 0 ? room - 1 : -1;
+			default:
+				return -1;
+			}
+		}
+		return graph().exit(room, direction);
+	}
+	
+	/**
+	 * Returns the index of the northern-most room a player can walk into. In a live world
+	 * the room added last is only reachable once the north door leading to it is labeled.
+	 * 
+	 * @return index of the room, or -1 if there are no rooms
+	 */
+	int lastReachable() {
+		int last = rooms.size() - 1;
+		if(live && last > 0 && rooms.get(last - 1).getDoor(Direction.NORTH) == null) {
+			return last - 1;
+		}
+		return last;
+	}
+	
+	// Return the doors as a RoomGraph, building it if doors were added since. Building
+	// is idempotent and a RoomGraph is immutable, so readers racing to build are harmless.
+	private RoomGraph graph() {
+		RoomGraph g = graph;
+		if(g == null) {
+			g = doors.build(rooms.size());
+			graph = g;
+		}
+		return g;
+	}
+	
+	/**
+	 * Returns the position of room in the world, counting from the first room (0)
+	 * northwards.
+	 * 
+	 * @param room the room to look up
+	 * @return index of the room, or -1 if the room does not exist in the world
+	 */
+	int indexOf(Room room) {
+		return rooms.indexOf(room);
+	}
+	
+	// Add the first room; see CoffeeMakerQuestImpl.addFirstRoom
+	boolean addFirstRoom(Room room) {
+		if(room == null || frozen) {
+			return false;
+		}
+		
+		if(rooms.size() == 0) {
+			rooms.add(room, null);
+			indexRoom(room, null);
+			return true;
+		}
+		return false;
+	}
+	
+	// Attach room to the northern-most room; see CoffeeMakerQuestImpl.addRoomAtNorth
+	boolean addRoomAtNorth(Room room, String northDoor, String southDoor) {
+		if(room == null || northDoor == null || southDoor == null || frozen) {
+			return false;
+		}
+		
+		if(rooms.size() == 0) {
+			return false;
+		}
+		
+		if(rooms.containsAdjective(room.getAdjective()) || rooms.containsFurnishing(room.getFurnishing())) {
+			return false;
+		}
+		if(doors != null && hasExit(rooms.size()-1, Direction.NORTH)) {
+			return false;
+		}
+		// The new room is stored before the door that leads to it, for readers of a live store
+		room.setSouthDoor(southDoor);
+		rooms.add(room, southDoor);
+		rooms.setNorthDoor(rooms.size()-2, northDoor);
+		hashDoor(northDoor);
+		indexRoom(room, southDoor);
+		if(doors != null) {
+			addChainDoors(northDoor, southDoor);
+		}
+		return true;
+	}
+	
+	// Attach a batch of rooms, all or nothing; see CoffeeMakerQuestImpl.addRoomsAtNorth
+	boolean addRoomsAtNorth(List<Room> newRooms, List<String> northDoors, List<String> southDoors) {
+		if(newRooms == null || northDoors == null || southDoors == null || frozen) {
+			return false;
+		}
+		int n = newRooms.size();
+		if(northDoors.size() != n || southDoors.size() != n) {
+			return false;
+		}
+		if(rooms.size() == 0) {
+			return false;
+		}
+		if(doors != null && hasExit(rooms.size()-1, Direction.NORTH)) {
+			return false;
+		}
+		
+		// Validate the whole batch before touching any room.
+		HashSet<String> seenAdjectives = new HashSet<String>(n * 2);
+		HashSet<String> seenFurnishings = new HashSet<String>(n * 2);
+		for(int i = 0; i < n; i++) {
+			Room room = newRooms.get(i);
+			if(room == null || northDoors.get(i) == null || southDoors.get(i) == null) {
+				return false;
+			}
+			String adjective = room.getAdjective();
+			String furnishing = room.getFurnishing();
+			if(adjective != null && (rooms.containsAdjective(adjective) || !seenAdjectives.add(RoomStore.foldCase(adjective)))) {
+				return false;
+			}
+			if(furnishing != null && (rooms.containsFurnishing(furnishing) || !seenFurnishings.add(RoomStore.foldCase(furnishing)))) {
+				return false;
+			}
+		}
+		
+		// Wire the doors and append in a single pass.
+		rooms.ensureCapacity(rooms.size() + n);
+		for(int i = 0; i < n; i++) {
+			Room room = newRooms.get(i);
+			room.setSouthDoor(southDoors.get(i));
+			rooms.add(room, southDoors.get(i));
+			rooms.setNorthDoor(rooms.size()-2, northDoors.get(i));
+			hashDoor(northDoors.get(i));
+			indexRoom(room, southDoors.get(i));
+			if(doors != null) {
+				addChainDoors(northDoors.get(i), southDoors.get(i));
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Add a room without any doors, making this a graph world. Connect it to other rooms
+	 * with connect. The room must be unique like for addRoomAtNorth.
+	 * 
+	 * @param room the room to add
+	 * @return index of the room, or -1 if room is null or not unique or the world is frozen or live
+	 */
+	int addRoom(Room room) {
+		if(room == null || frozen || live) {
+			return -1;
+		}
+		if(rooms.containsAdjective(room.getAdjective()) || rooms.containsFurnishing(room.getFurnishing())) {
+			return -1;
+		}
+		toGraph();
+		rooms.add(room, null);
+		// Tell a room added this way from the first room of a chain
+		contentHash = (contentHash ^ 0x30000) * FNV_PRIME;
+		indexRoom(room, null);
+		graph = null;
+		return rooms.size() - 1;
+	}
+	
+	/**
+	 * Add a one-way door from one room to another, making this a graph world. The door is
+	 * labeled door in room from; for a way back, connect the rooms the other way too.
+	 * 
+	 * @param from      index of the room the door is in
+	 * @param direction the direction the door leads in
+	 * @param to        index of the room it leads to
+	 * @param door      the door label
+	 * @return true if successful, false if door is null, a room does not exist, from already has a door in that direction or the world is frozen or live
+	 */
+	boolean connect(int from, Direction direction, int to, String door) {
+		if(door == null || frozen || live || from < 0 || from >= rooms.size() || to < 0 || to >= rooms.size()) {
+			return false;
+		}
+		if(hasExit(from, direction)) {
+			return false;
+		}
+		toGraph();
+		rooms.setDoor(from, direction, door);
+		addDoor(from, direction, to, door);
+		long h = (contentHash ^ (0x30001 + direction.ordinal())) * FNV_PRIME;
+		h = (h ^ from) * FNV_PRIME;
+		h = (h ^ to) * FNV_PRIME;
+		contentHash = hash(h, door);
+		return true;
+	}
+	
+	private boolean hasExit(int room, Direction direction) {
+		if(doors == null) {
+			return exit(room, direction) >= 0;
+		}
+		return room < exitMasks.length && (exitMasks[room] & (1 << direction.ordinal())) != 0;
+	}
+	
+	// Turn a chain world into a graph world whose first doors are those of the chain
+	private void toGraph() {
+		if(doors != null) {
+			return;
+		}
+		doors = new RoomGraph.Builder();
+		exitMasks = new byte[Math.max(rooms.size(), 16)];
+		for(int i = 0; i + 1 < rooms.size(); i++) {
+			addDoor(i, Direction.NORTH, i + 1, rooms.get(i).getDoor(Direction.NORTH));
+			addDoor(i + 1, Direction.SOUTH, i, rooms.get(i + 1).getDoor(Direction.SOUTH));
+		}
+	}
+	
+	// Record the doors between the room just added at north and the room before it
+	private void addChainDoors(String northDoor, String southDoor) {
+		int room = rooms.size() - 1;
+		addDoor(room - 1, Direction.NORTH, room, northDoor);
+		addDoor(room, Direction.SOUTH, room - 1, southDoor);
+	}
+	
+	private void addDoor(int from, Direction direction, int to, String door) {
+		if(from >= exitMasks.length) {
+			exitMasks = Arrays.copyOf(exitMasks, Math.max(from + 1, exitMasks.length * 2));
+		}
+		exitMasks[from] |= 1 << direction.ordinal();
+		doors.addExit(from, direction, to, door);
+		graph = null;
+	}
+	
+	// Fold the north door of the previous northern-most room into the content hash
+	private void hashDoor(String northDoor) {
+		contentHash = hash(contentHash, northDoor);
+	}
+	
+	// Fold a newly added room into the content hash and the win-path oracle
+	private void indexRoom(Room room, String southDoor) {
+		Item item = room.getItem();
+		winPaths.roomAdded(rooms.size() - 1, item);
+		contentHash = hashRoom(contentHash, room.getAdjective(), room.getFurnishing(), item, southDoor);
+	}
+	
+	private static long hashRoom(long h, String adjective, String furnishing, Item item, String southDoor) {
+		h = hash(h, adjective);
+		h = hash(h, furnishing);
+		h = (h ^ (0x20000 + (item == null ? 0 : item.ordinal() + 1))) * FNV_PRIME;
+		return hash(h, southDoor);
+	}
+	
+	/**
+	 * Returns the contentHash() a world would have after adding the given chain of rooms
+	 * with addFirstRoom and addRoomAtNorth, without building it.
+	 * 
+	 * @param size  number of rooms
+	 * @param rooms returns the room at an index, with its north and south doors set
+	 * @return the content hash
+	 */
+	static long chainHash(int size, IntFunction<Room> rooms) {
+		long h = FNV_OFFSET;
+		String northDoor = null;
+		for(int i = 0; i < size; i++) {
+			Room room = rooms.apply(i);
+			if(i > 0) {
+				h = hash(h, northDoor);
+			}
+			h = hashRoom(h, room.getAdjective(), room.getFurnishing(), room.getItem(), i > 0 ? room.getDoor(Direction.SOUTH) : null);
+			northDoor = room.getDoor(Direction.NORTH);
+		}
+		return h;
+	}
+	
+	// FNV-1a over the characters of s, followed by a terminator no character can take
+	private static long hash(long h, String s) {
+		if(s == null) {
+			return (h ^ 0x10001) * FNV_PRIME;
+		}
+		for(int i = 0; i < s.length(); i++) {
+			h = (h ^ s.charAt(i)) * FNV_PRIME;
+		}
+		return (h ^ 0x10000) * FNV_PRIME;
+	}
+}
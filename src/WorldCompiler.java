@@ -0,0 +1,205 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Compiles a text world definition into a world image: a MappedRoomStore file with a
+ * checksum and prebuilt name indexes. All the checks addFirstRoom and addRoomAtNorth
+ * would make are done once, at compile time and in parallel, so a game or server can
+ * load the image and play without building or validating anything.
+ * 
+ * A definition has one line per room, from the first room northwards, with five fields
+ * separated by '|': adjective, furnishing, item (COFFEE, CREAM, SUGAR or NONE), south
+ * door and north door. The first room has no south door and the last no north door,
+ * written "-"; every other door must be labeled. Fields are trimmed, and blank lines and
+ * lines starting with '#' are ignored. For example:
+ * 
+ *   # adjective | furnishing | item | south door | north door
+ *   Small | Quaint sofa | CREAM | - | Magenta
+ *   Funny | Sad record player | NONE | Massive | -
+ * 
+ * Usage: java WorldCompiler definition.txt world.img
+ */
+class WorldCompiler {
+	static final String NO_DOOR = "-";
+	
+	private final int size;
+	private final String[] adjectives;
+	private final String[] furnishings;
+	private final Item[] items;
+	private final String[] southDoors;
+	private final String[] northDoors;
+	
+	private WorldCompiler(int size) {
+		this.size = size;
+		adjectives = new String[size];
+		furnishings = new String[size];
+		items = new Item[size];
+		southDoors = new String[size];
+		northDoors = new String[size];
+	}
+	
+	/**
+	 * Compile a world definition into an image.
+	 * 
+	 * @param definition the text world definition, in UTF-8
+	 * @param image      the image file to write
+	 * @throws IOException if a file cannot be read or written, or the definition is invalid
+	 */
+	static void compile(File definition, File image) throws IOException {
+		WorldCompiler world = parse(Files.readAllLines(definition.toPath(), StandardCharsets.UTF_8), definition.getName());
+		MappedRoomStore.write(image, world.size, world::room, World.chainHash(world.size, world::room));
+	}
+	
+	/**
+	 * Load a compiled world image, checking its checksum but nothing else.
+	 * 
+	 * @param image the image file
+	 * @return a frozen world
+	 * @throws IOException if the image cannot be read, is not a world image or is corrupt
+	 */
+	static World load(File image) throws IOException {
+		MappedRoomStore rooms = new MappedRoomStore(image);
+		if(!rooms.checksumMatches()) {
+			throw new IOException(image + " is corrupt");
+		}
+		return new World(rooms);
+	}
+	
+	/**
+	 * Write the rooms of a chain world as a world definition that compiles back to it.
+	 * 
+	 * @param world      the world; its names and door labels must not contain '|' or line breaks
+	 * @param definition the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	static void decompile(World world, File definition) throws IOException {
+		if(!world.isChain()) {
+			throw new IllegalArgumentException("Only chain worlds can be written as a world definition");
+		}
+		try(Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(definition), StandardCharsets.UTF_8), 1 << 20)) {
+			out.write("# adjective | furnishing | item | south door | north door\n");
+			for(int i = 0; i < world.size(); i++) {
+				Room room = world.get(i);
+				String south = room.getDoor(Direction.SOUTH);
+				String north = room.getDoor(Direction.NORTH);
+				out.write(room.getAdjective() + " | " + room.getFurnishing() + " | " + room.getItem() + " | "
+						+ (south == null ? NO_DOOR : south) + " | " + (north == null ? NO_DOOR : north) + "\n");
+			}
+		}
+	}
+	
+	/**
+	 * Parse and validate a world definition.
+	 * 
+	 * @param lines  the lines of the definition
+	 * @param source name of the definition for error messages
+	 * @return the parsed rooms
+	 * @throws IOException naming the first invalid line, if any
+	 */
+	static WorldCompiler parse(List<String> lines, String source) throws IOException {
+		// Line number (from 1) of each room
+		int[] lineNumbers = new int[lines.size()];
+		int size = 0;
+		for(int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i).trim();
+			if(!line.isEmpty() && !line.startsWith("#")) {
+				lineNumbers[size++] = i + 1;
+			}
+		}
+		if(size == 0) {
+			throw new IOException(source + " has no rooms");
+		}
+		WorldCompiler world = new WorldCompiler(size);
+		String[] errors = new String[size];
+		// First room with each case-folded adjective and furnishing; rooms race to claim a name
+		ConcurrentHashMap<String, Integer> adjectives = new ConcurrentHashMap<String, Integer>(size * 2);
+		ConcurrentHashMap<String, Integer> furnishings = new ConcurrentHashMap<String, Integer>(size * 2);
+		IntStream.range(0, size).parallel().forEach(i -> {
+			errors[i] = world.parseRoom(i, lines.get(lineNumbers[i] - 1));
+			if(errors[i] == null) {
+				adjectives.merge(RoomStore.foldCase(world.adjectives[i]), i, Math::min);
+				furnishings.merge(RoomStore.foldCase(world.furnishings[i]), i, Math::min);
+			}
+		});
+		IntStream.range(0, size).parallel().forEach(i -> {
+			if(errors[i] != null) {
+				return;
+			}
+			int first = adjectives.get(RoomStore.foldCase(world.adjectives[i]));
+			if(first != i) {
+				errors[i] = "adjective " + world.adjectives[i] + " is already used on line " + lineNumbers[first];
+				return;
+			}
+			first = furnishings.get(RoomStore.foldCase(world.furnishings[i]));
+			if(first != i) {
+				errors[i] = "furnishing " + world.furnishings[i] + " is already used on line " + lineNumbers[first];
+			}
+		});
+		for(int i = 0; i < size; i++) {
+			if(errors[i] != null) {
+				throw new IOException(source + ":" + lineNumbers[i] + ": " + errors[i]);
+			}
+		}
+		return world;
+	}
+	
+	// Parse the room at index from its line; returns what is wrong with it, or null
+	private String parseRoom(int index, String line) {
+		String[] fields = line.split("\\|", -1);
+		if(fields.length != 5) {
+			return "expected 5 fields separated by '|', found " + fields.length;
+		}
+		for(int f = 0; f < fields.length; f++) {
+			fields[f] = fields[f].trim();
+			if(fields[f].isEmpty()) {
+				return "field " + (f + 1) + " is empty";
+			}
+		}
+		try {
+			items[index] = Item.valueOf(fields[2]);
+		} catch(IllegalArgumentException e) {
+			return "unknown item " + fields[2];
+		}
+		adjectives[index] = fields[0];
+		furnishings[index] = fields[1];
+		southDoors[index] = fields[3].equals(NO_DOOR) ? null : fields[3];
+		northDoors[index] = fields[4].equals(NO_DOOR) ? null : fields[4];
+		if((index == 0) != (southDoors[index] == null)) {
+			return index == 0 ? "the first room cannot have a south door" : "the south door is missing";
+		}
+		if((index == size - 1) != (northDoors[index] == null)) {
+			return index == size - 1 ? "the last room cannot have a north door" : "the north door is missing";
+		}
+		return null;
+	}
+	
+	// Build the room at index, with its doors
+	private Room room(int index) {
+		Room room = new Room(furnishings[index], adjectives[index], items[index]);
+		if(northDoors[index] != null) {
+			room.setNorthDoor(northDoors[index]);
+		}
+		if(southDoors[index] != null) {
+			room.setSouthDoor(southDoors[index]);
+		}
+		return room;
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if(args.length != 2) {
+			System.err.println("Usage: java WorldCompiler definition.txt world.img");
+			System.exit(2);
+		}
+		long start = System.nanoTime();
+		compile(new File(args[0]), new File(args[1]));
+		System.out.println(String.format("Compiled %s into %s in %.1f ms", args[0], args[1], (System.nanoTime() - start) / 1e6));
+	}
+}